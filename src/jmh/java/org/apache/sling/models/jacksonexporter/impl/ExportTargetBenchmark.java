@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Compares the {@code String} export target, encoded to UTF-8 afterwards like a servlet writing the response does,
+ * with the {@code byte[]} export target.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportTargetBenchmark {
+
+    @Param({"10", "1000"})
+    private int items;
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    private BundleContext bundleContext;
+
+    private JacksonExporter exporter;
+
+    private Object model;
+
+    @Setup
+    public void setUp() {
+        bundleContext = MockOsgi.newBundleContext();
+        exporter = new JacksonExporter();
+        MockOsgi.injectServices(exporter, bundleContext);
+        MockOsgi.activate(exporter, bundleContext);
+        model = new Page(items);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public byte[] exportStringThenEncode() throws ExportException {
+        return exporter.export(model, String.class, options).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] exportBytes() throws ExportException {
+        return exporter.export(model, byte[].class, options);
+    }
+
+    /**
+     * Model with a mix of ASCII, non-ASCII and escaped characters.
+     */
+    public static class Page {
+
+        private final List<Item> items = new ArrayList<>();
+
+        Page(int count) {
+            for (int i = 0; i < count; i++) {
+                items.add(new Item(i));
+            }
+        }
+
+        public String getTitle() {
+            return "Übersicht <Seite>";
+        }
+
+        public List<Item> getItems() {
+            return items;
+        }
+    }
+
+    public static class Item {
+
+        private final int index;
+
+        Item(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return "item-" + index;
+        }
+
+        public String getDescription() {
+            return "Größe " + index + " € <b>inklusive</b> \"Versand\"";
+        }
+
+        public boolean isActive() {
+            return index % 2 == 0;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Measures {@link JacksonExporter#export(Object, Class, Map)} of a plain model to the {@code String} and {@code Map}
+ * targets with different option sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExporterBenchmark {
+
+    @Param({"none", "tidy", "features"})
+    private String options;
+
+    @Param({"10", "100"})
+    private int items;
+
+    private Map<String, String> exportOptions;
+
+    private BundleContext bundleContext;
+
+    private JacksonExporter exporter;
+
+    private Object model;
+
+    @Setup
+    public void setUp() {
+        bundleContext = MockOsgi.newBundleContext();
+        exporter = new JacksonExporter();
+        MockOsgi.injectServices(exporter, bundleContext);
+        MockOsgi.activate(exporter, bundleContext);
+        model = new Catalog(items);
+        switch (options) {
+            case "tidy":
+                exportOptions = Collections.singletonMap(MappingOptionsResolver.TIDY, "true");
+                break;
+            case "features":
+                exportOptions = new HashMap<>();
+                exportOptions.put("SerializationFeature.WRITE_DATES_AS_TIMESTAMPS", "false");
+                exportOptions.put("SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS", "true");
+                exportOptions.put("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true");
+                break;
+            default:
+                exportOptions = Collections.emptyMap();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public String exportString() throws ExportException {
+        return exporter.export(model, String.class, exportOptions);
+    }
+
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public Map exportMap() throws ExportException {
+        return exporter.export(model, Map.class, exportOptions);
+    }
+
+    public static class Catalog {
+
+        private final List<Product> products = new ArrayList<>();
+
+        private final Map<String, Object> properties = new HashMap<>();
+
+        Catalog(int count) {
+            for (int i = 0; i < count; i++) {
+                products.add(new Product(i));
+                properties.put("property" + i, i % 2 == 0 ? "value " + i : Integer.valueOf(i));
+            }
+        }
+
+        public String getTitle() {
+            return "Catalog";
+        }
+
+        public List<Product> getProducts() {
+            return products;
+        }
+
+        public Map<String, Object> getProperties() {
+            return properties;
+        }
+    }
+
+    public static class Product {
+
+        private final int index;
+
+        Product(int index) {
+            this.index = index;
+        }
+
+        public String getSku() {
+            return "SKU-" + index;
+        }
+
+        public String getName() {
+            return "Product " + index;
+        }
+
+        public double getPrice() {
+            return index * 1.25;
+        }
+
+        public boolean isAvailable() {
+            return index % 3 != 0;
+        }
+
+        public String[] getTags() {
+            return new String[] {"tag" + index % 5, "tag" + index % 7};
+        }
+    }
+}
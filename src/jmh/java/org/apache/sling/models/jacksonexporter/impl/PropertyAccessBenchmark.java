@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Compares the export of models with typical Sling Model getters through reflection with the export through the
+ * accessors generated by the {@link BlackbirdModuleProvider}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyAccessBenchmark {
+
+    @Param({"reflection", "blackbird"})
+    private String access;
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    private BundleContext bundleContext;
+
+    private JacksonExporter exporter;
+
+    private Object model;
+
+    @Setup
+    public void setUp() {
+        bundleContext = MockOsgi.newBundleContext();
+        if (access.equals("blackbird")) {
+            BlackbirdModuleProvider moduleProvider = new BlackbirdModuleProvider();
+            MockOsgi.activate(moduleProvider, bundleContext);
+            bundleContext.registerService(ModuleProvider.class, moduleProvider, null);
+        }
+        exporter = new JacksonExporter();
+        MockOsgi.injectServices(exporter, bundleContext);
+        MockOsgi.activate(exporter, bundleContext);
+        List<Teaser> teasers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            teasers.add(new Teaser(i));
+        }
+        model = new TeaserList(teasers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public String export() throws ExportException {
+        return exporter.export(model, String.class, options);
+    }
+
+    public static class TeaserList {
+
+        private final List<Teaser> teasers;
+
+        TeaserList(List<Teaser> teasers) {
+            this.teasers = teasers;
+        }
+
+        public String getId() {
+            return "teaser-list";
+        }
+
+        public List<Teaser> getTeasers() {
+            return teasers;
+        }
+
+        public String getExportedType() {
+            return "app/components/teaserlist";
+        }
+    }
+
+    /**
+     * Model with the kinds of getters typically found on Sling Models: injected strings, numbers, flags and dates.
+     */
+    public static class Teaser {
+
+        private final String title;
+
+        private final String description;
+
+        private final String link;
+
+        private final String imagePath;
+
+        private final int position;
+
+        private final long views;
+
+        private final boolean featured;
+
+        private final boolean hidden;
+
+        private final Calendar lastModified;
+
+        private final String[] tags;
+
+        Teaser(int index) {
+            this.title = "Teaser " + index;
+            this.description = "Description of teaser " + index;
+            this.link = "/content/site/page-" + index + ".html";
+            this.imagePath = "/content/dam/image-" + index + ".jpg";
+            this.position = index;
+            this.views = index * 1000L;
+            this.featured = index % 5 == 0;
+            this.hidden = false;
+            this.lastModified = Calendar.getInstance();
+            this.lastModified.setTimeInMillis(1_700_000_000_000L + index);
+            this.tags = new String[] {"news", "tag-" + index};
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getLink() {
+            return link;
+        }
+
+        public String getImagePath() {
+            return imagePath;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public long getViews() {
+            return views;
+        }
+
+        public boolean isFeatured() {
+            return featured;
+        }
+
+        public boolean isHidden() {
+            return hidden;
+        }
+
+        public Calendar getLastModified() {
+            return lastModified;
+        }
+
+        public String[] getTags() {
+            return tags;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.MockSling;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.builder.ContentBuilder;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Measures the export of models exposing the request, which is serialized through the mixins and the
+ * {@link EnumerationSerializer} registered by the {@link RequestModuleProvider}, and of models exposing plain
+ * enumerations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSerializationBenchmark {
+
+    @Param({"10", "100"})
+    private int size;
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    private BundleContext bundleContext;
+
+    private ResourceResolver resourceResolver;
+
+    private JacksonExporter exporter;
+
+    private RequestModel requestModel;
+
+    private Vector<String> values;
+
+    @Setup
+    public void setUp() throws LoginException {
+        bundleContext = MockOsgi.newBundleContext();
+        bundleContext.registerService(ModuleProvider.class, new RequestModuleProvider(), null);
+        ResourceModuleProvider resourceModuleProvider = new ResourceModuleProvider();
+        MockOsgi.activate(resourceModuleProvider, bundleContext);
+        bundleContext.registerService(ModuleProvider.class, resourceModuleProvider, null);
+        exporter = new JacksonExporter();
+        MockOsgi.injectServices(exporter, bundleContext);
+        MockOsgi.activate(exporter, bundleContext);
+
+        resourceResolver = MockSling.newResourceResolver(ResourceResolverType.RESOURCERESOLVER_MOCK, bundleContext);
+        MockSlingHttpServletRequest request = new BenchmarkRequest(resourceResolver, bundleContext);
+        request.setResource(new ContentBuilder(resourceResolver)
+                .resource("/content/page", "jcr:title", "Page", "sling:resourceType", "app/page"));
+        values = new Vector<>();
+        for (int i = 0; i < size; i++) {
+            request.setAttribute("attribute" + i, "value " + i);
+            request.addHeader("X-Header-" + i, "value " + i);
+            values.add("value " + i);
+        }
+        request.setQueryString("a=1&b=2");
+        requestModel = new RequestModel(request);
+    }
+
+    @TearDown
+    public void tearDown() {
+        resourceResolver.close();
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public String exportRequest() throws ExportException {
+        return exporter.export(requestModel, String.class, options);
+    }
+
+    @Benchmark
+    public String exportEnumeration() throws ExportException {
+        return exporter.export(new EnumerationModel(values.elements()), String.class, options);
+    }
+
+    /**
+     * Returns empty values instead of throwing for the serialized request properties the mock request does not
+     * support, like the request of a servlet container.
+     */
+    static class BenchmarkRequest extends MockSlingHttpServletRequest {
+
+        BenchmarkRequest(ResourceResolver resourceResolver, BundleContext bundleContext) {
+            super(resourceResolver, bundleContext);
+        }
+
+        @Override
+        public String getPathTranslated() {
+            return null;
+        }
+
+        @Override
+        public String getRequestedSessionId() {
+            return null;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdValid() {
+            return false;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromCookie() {
+            return false;
+        }
+
+        @Override
+        public boolean isRequestedSessionIdFromURL() {
+            return false;
+        }
+
+        @Override
+        @Deprecated
+        public boolean isRequestedSessionIdFromUrl() {
+            return false;
+        }
+    }
+
+    public static class RequestModel {
+
+        private final MockSlingHttpServletRequest request;
+
+        RequestModel(MockSlingHttpServletRequest request) {
+            this.request = request;
+        }
+
+        public SlingHttpServletRequest getRequest() {
+            return request;
+        }
+    }
+
+    public static class EnumerationModel {
+
+        private final Enumeration<String> values;
+
+        EnumerationModel(Enumeration<String> values) {
+            this.values = values;
+        }
+
+        public Enumeration<String> getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.MockSling;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.builder.ContentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Measures the export of mock resource trees through the {@link ResourceSerializer}, for a wide tree with many
+ * children below the root and for a deep tree with a single child per level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceSerializerBenchmark {
+
+    @Param({"wide", "deep"})
+    private String shape;
+
+    @Param({"10", "100"})
+    private int size;
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    private BundleContext bundleContext;
+
+    private ResourceResolver resourceResolver;
+
+    private JacksonExporter exporter;
+
+    private Resource root;
+
+    @Setup
+    public void setUp() throws LoginException {
+        bundleContext = MockOsgi.newBundleContext();
+        ResourceModuleProvider moduleProvider = new ResourceModuleProvider();
+        MockOsgi.activate(moduleProvider, bundleContext);
+        bundleContext.registerService(ModuleProvider.class, moduleProvider, null);
+        exporter = new JacksonExporter();
+        MockOsgi.injectServices(exporter, bundleContext);
+        MockOsgi.activate(exporter, bundleContext);
+
+        resourceResolver = MockSling.newResourceResolver(ResourceResolverType.RESOURCERESOLVER_MOCK, bundleContext);
+        ContentBuilder content = new ContentBuilder(resourceResolver);
+        root = content.resource("/content/root", properties(-1));
+        String path = root.getPath();
+        for (int i = 0; i < size; i++) {
+            if (shape.equals("wide")) {
+                content.resource(path + "/child" + i, properties(i));
+            } else {
+                path = content.resource(path + "/level" + i, properties(i)).getPath();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        resourceResolver.close();
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Benchmark
+    public String exportTree() throws ExportException {
+        return exporter.export(root, String.class, options);
+    }
+
+    private static Map<String, Object> properties(int index) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jcr:primaryType", "nt:unstructured");
+        properties.put("jcr:title", "Resource " + index);
+        properties.put("index", index);
+        properties.put("hidden", index % 2 == 0);
+        properties.put("tags", new String[] {"a", "b", "c"});
+        properties.put("ratings", new long[] {1, 2, 3, 4, 5});
+        Calendar modified = Calendar.getInstance();
+        modified.setTimeInMillis(1_700_000_000_000L + index);
+        properties.put("jcr:lastModified", modified);
+        return properties;
+    }
+}
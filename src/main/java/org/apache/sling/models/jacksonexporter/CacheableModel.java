@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.apache.sling.api.resource.Resource;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Opt-in interface for models whose exported representation only depends on the content of a resource subtree and
+ * on the user reading it. When the output cache of the Jackson Exporter is enabled, the {@code String},
+ * {@code byte[]} and {@link DigestedExport} exports of such models are cached until a resource in that subtree, or
+ * one of its ancestors, changes.
+ * <p>
+ * Models must only implement this interface if all data they export is derived from the returned resource, its
+ * descendants and the permissions of the user of its resource resolver. The cache resource itself is not part of
+ * the export.
+ */
+@ConsumerType
+public interface CacheableModel {
+
+    /**
+     * Returns the resource the exported representation of this model is derived from.
+     *
+     * @return the resource, or {@code null} if the export of this instance must not be cached
+     */
+    @JsonIgnore
+    @Nullable
+    Resource getCacheResource();
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Export target of the Jackson Exporter which returns the JSON representation of a model together with its digest,
+ * computed while generating the representation instead of in a second pass. Request it by passing this interface as
+ * target class, e.g. <code>modelFactory.exportModel(model, "jackson", DigestedExport.class, options)</code>.
+ * <p>
+ * The content equals the one of the {@code String} target, the digest is computed over its UTF-8 encoding with the
+ * algorithm configured for the exporter.
+ */
+@ProviderType
+public interface DigestedExport extends ExportDigest {
+
+    /**
+     * @return the JSON representation of the model
+     */
+    @NotNull
+    String getContent();
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Digest of the exported JSON representation of a model, computed while it was generated.
+ */
+@ProviderType
+public interface ExportDigest {
+
+    /**
+     * @return the name of the message digest algorithm, e.g. {@code SHA-256}
+     */
+    @NotNull
+    String getAlgorithm();
+
+    /**
+     * @return a copy of the digest of the UTF-8 encoded JSON representation
+     */
+    @NotNull
+    byte[] getDigest();
+
+    /**
+     * Returns the digest formatted as strong entity tag, i.e. the unpadded base64url encoded digest enclosed in
+     * double quotes.
+     *
+     * @return the entity tag
+     */
+    @NotNull
+    String getETag();
+}
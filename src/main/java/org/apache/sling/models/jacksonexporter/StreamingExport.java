@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter;
+
+import java.io.OutputStream;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.sling.models.factory.ExportException;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Export target of the Jackson Exporter which writes the JSON representation of a model directly to a sink supplied
+ * by the caller, instead of building it in memory first. Request it by passing this interface as target class, e.g.
+ * <code>modelFactory.exportModel(model, "jackson", StreamingExport.class, options)</code>.
+ * <p>
+ * The model is only serialized when one of the {@code writeTo} methods is called, with the same options, escaping
+ * and formatting as for the {@code String} target. The given sinks are flushed but not closed.
+ * <p>
+ * Streaming exports of the binary exporters, e.g. {@code "jackson-smile"}, write their encoding instead of JSON and
+ * can only be written to streams and generators; writing them to a {@link Writer} fails with an
+ * {@link ExportException}.
+ */
+@ProviderType
+public interface StreamingExport {
+
+    /**
+     * Writes the JSON representation of the model to the given writer.
+     *
+     * @param writer the writer
+     * @throws ExportException if the model could not be serialized or written
+     */
+    void writeTo(@NotNull Writer writer) throws ExportException;
+
+    /**
+     * Writes the UTF-8 encoded JSON representation of the model to the given stream.
+     *
+     * @param outputStream the stream
+     * @throws ExportException if the model could not be serialized or written
+     */
+    void writeTo(@NotNull OutputStream outputStream) throws ExportException;
+
+    /**
+     * Writes the JSON representation of the model to the given generator. If the generator has no character escapes
+     * configured, the ones of the exporter are applied while writing.
+     *
+     * @param generator the generator
+     * @throws ExportException if the model could not be serialized or written
+     */
+    void writeTo(@NotNull JsonGenerator generator) throws ExportException;
+
+    /**
+     * Writes the JSON representation of the model to the given writer like {@link #writeTo(Writer)} and computes the
+     * digest of its UTF-8 encoding while doing so.
+     *
+     * @param writer the writer
+     * @return the digest of the written representation
+     * @throws ExportException if the model could not be serialized or written
+     */
+    @NotNull
+    ExportDigest writeDigestedTo(@NotNull Writer writer) throws ExportException;
+
+    /**
+     * Writes the UTF-8 encoded JSON representation of the model to the given stream like
+     * {@link #writeTo(OutputStream)} and computes the digest of the written bytes while doing so.
+     *
+     * @param outputStream the stream
+     * @return the digest of the written representation
+     * @throws ExportException if the model could not be serialized or written
+     */
+    @NotNull
+    ExportDigest writeDigestedTo(@NotNull OutputStream outputStream) throws ExportException;
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Provides the Jackson Blackbird module, which replaces the reflective invocation of getters and access of fields by
+ * accessors generated with the {@code LambdaMetafactory}. The accessors only implement JDK functional interfaces, so
+ * they are defined with a private lookup in the classes of the models and do not require the bundle class loaders of
+ * the models to see any Jackson classes. Properties for which no accessor can be generated keep being accessed via
+ * reflection.
+ * <p>
+ * The provider is only active if a configuration exists, removing the configuration switches it off again.
+ */
+@Component(service = ModuleProvider.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@Designate(ocd = BlackbirdModuleProvider.Config.class)
+public class BlackbirdModuleProvider implements ModuleProvider {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Models Jackson Exporter - Blackbird support",
+            description = "Provider of the Jackson Blackbird Module, which accesses model properties through "
+                    + "generated lambdas instead of reflection. Only active if a configuration exists.")
+    static @interface Config {}
+
+    private Module moduleInstance;
+
+    @Activate
+    private void activate() {
+        this.moduleInstance = new BlackbirdModule();
+    }
+
+    @Override
+    public Module getModule() {
+        return moduleInstance;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.apache.sling.models.export.spi.ModelExporter;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Exports models in CBOR, the Concise Binary Object Representation specified by RFC 8949, to the {@code byte[]} and
+ * {@link StreamingExport} targets. The models are serialized by the {@link JacksonExporter} with its module
+ * providers, mapping options and limits.
+ */
+@Component(service = ModelExporter.class)
+public class CborExporter implements ModelExporter {
+
+    private final JsonFactory cborFactory = new CBORFactory();
+
+    @Reference
+    private JacksonExporter jacksonExporter;
+
+    @Override
+    public boolean isSupported(@NotNull Class<?> clazz) {
+        return clazz.equals(byte[].class) || clazz.equals(StreamingExport.class);
+    }
+
+    @Override
+    public <T> T export(@NotNull Object model, @NotNull Class<T> clazz, @NotNull Map<String, String> options)
+            throws ExportException {
+        if (!isSupported(clazz)) {
+            return null;
+        }
+        return jacksonExporter.export(model, clazz, options, cborFactory);
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "jackson-cbor";
+    }
+}
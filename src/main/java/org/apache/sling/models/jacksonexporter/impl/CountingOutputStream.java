@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Output stream which counts the bytes written to the wrapped stream and optionally rejects writes exceeding a
+ * maximum number of bytes.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private final long limit;
+
+    private long count;
+
+    CountingOutputStream(@NotNull OutputStream out) {
+        this(out, -1);
+    }
+
+    /**
+     * @param out the wrapped stream
+     * @param limit the maximum number of bytes which may be written, or a negative value for no limit
+     */
+    CountingOutputStream(@NotNull OutputStream out, long limit) {
+        super(out);
+        this.limit = limit;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkLimit(1);
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkLimit(len);
+        out.write(b, off, len);
+        count += len;
+    }
+
+    private void checkLimit(int len) throws ExportLimitExceededException {
+        if (limit >= 0 && count + len > limit) {
+            throw new ExportLimitExceededException("Export exceeds the maximum output size of " + limit + " bytes");
+        }
+    }
+}
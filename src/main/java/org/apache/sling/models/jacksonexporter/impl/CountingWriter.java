@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writer which counts the characters written to the wrapped writer and optionally rejects writes exceeding a maximum
+ * number of characters.
+ */
+class CountingWriter extends FilterWriter {
+
+    private final long limit;
+
+    private long count;
+
+    CountingWriter(@NotNull Writer out) {
+        this(out, -1);
+    }
+
+    /**
+     * @param out the wrapped writer
+     * @param limit the maximum number of characters which may be written, or a negative value for no limit
+     */
+    CountingWriter(@NotNull Writer out, long limit) {
+        super(out);
+        this.limit = limit;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        checkLimit(1);
+        out.write(c);
+        count++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        checkLimit(len);
+        out.write(cbuf, off, len);
+        count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        checkLimit(len);
+        out.write(str, off, len);
+        count += len;
+    }
+
+    private void checkLimit(int len) throws ExportLimitExceededException {
+        if (limit >= 0 && count + len > limit) {
+            throw new ExportLimitExceededException(
+                    "Export exceeds the maximum output size of " + limit + " characters");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.MessageDigest;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writer which passes all characters on to another writer and updates a message digest with their UTF-8 encoding.
+ * Unpaired surrogates are digested as {@code '?'}, like {@code String.getBytes(StandardCharsets.UTF_8)} encodes them.
+ */
+final class DigestingWriter extends Writer {
+
+    private static final int BUFFER_SIZE = 4000;
+
+    private final Writer out;
+
+    private final MessageDigest digest;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE + 4];
+
+    private int length;
+
+    private char highSurrogate;
+
+    DigestingWriter(@NotNull Writer out, @NotNull MessageDigest digest) {
+        this.out = out;
+        this.digest = digest;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        update((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+        for (int i = off; i < off + len; i++) {
+            update(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        out.write(str, off, len);
+        for (int i = off; i < off + len; i++) {
+            update(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Completes the digest of all characters written so far.
+     *
+     * @return the digest
+     */
+    @NotNull
+    byte[] digest() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            buffer[length++] = '?';
+        }
+        digest.update(buffer, 0, length);
+        length = 0;
+        return digest.digest();
+    }
+
+    private void update(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                drainIfFull();
+                return;
+            }
+            buffer[length++] = '?';
+        }
+        if (c < 0x80) {
+            buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[length++] = (byte) (0xC0 | (c >> 6));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[length++] = '?';
+        } else {
+            buffer[length++] = (byte) (0xE0 | (c >> 12));
+            buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        drainIfFull();
+    }
+
+    private void drainIfFull() {
+        if (length >= BUFFER_SIZE) {
+            digest.update(buffer, 0, length);
+            length = 0;
+        }
+    }
+}
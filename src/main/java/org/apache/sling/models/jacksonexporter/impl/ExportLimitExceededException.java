@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Signals that an export exceeded one of its budgets. It is an {@link IOException} but no Jackson exception, so it is
+ * passed through by the serializers without being wrapped and aborts the export like a failing output would.
+ */
+class ExportLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = -2381409315765383263L;
+
+    ExportLimitExceededException(String message) {
+        super(message);
+    }
+
+    /**
+     * Returns the first exception of this type in the cause chain of the given exception.
+     *
+     * @param e the exception thrown by an export
+     * @return the exceeded limit or {@code null}
+     */
+    static @Nullable ExportLimitExceededException find(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ExportLimitExceededException) {
+                return (ExportLimitExceededException) cause;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable budgets of an export. Negative values disable the respective budget.
+ */
+final class ExportLimits {
+
+    private static final Logger log = LoggerFactory.getLogger(JacksonExporter.class);
+
+    static final ExportLimits NONE = new ExportLimits(-1, -1, -1, -1);
+
+    static final String TIMEOUT = "timeout";
+
+    private final long maxOutputSize;
+
+    private final int maxDepth;
+
+    private final long maxObjects;
+
+    private final long timeoutMillis;
+
+    /**
+     * @param maxOutputSize the maximum output size, in characters for text and in bytes for binary output
+     * @param maxDepth the maximum nesting depth of JSON objects and arrays
+     * @param maxObjects the maximum number of JSON objects
+     * @param timeoutMillis the maximum duration of generating the export in milliseconds
+     */
+    ExportLimits(long maxOutputSize, int maxDepth, long maxObjects, long timeoutMillis) {
+        this.maxOutputSize = maxOutputSize;
+        this.maxDepth = maxDepth;
+        this.maxObjects = maxObjects;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the limits for an export with the given options. The {@value #TIMEOUT} option is passed in via request
+     * parameters as well, so it may only shorten the configured timeout.
+     *
+     * @param options the options passed to the export
+     * @return the effective limits
+     */
+    @NotNull
+    ExportLimits withOptions(@NotNull Map<String, String> options) {
+        String value = options.get(TIMEOUT);
+        if (value == null) {
+            return this;
+        }
+        long timeout;
+        try {
+            timeout = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.debug("Bad timeout option: {}", value);
+            return this;
+        }
+        if (timeout < 0 || (timeoutMillis >= 0 && timeout >= timeoutMillis)) {
+            return this;
+        }
+        return new ExportLimits(maxOutputSize, maxDepth, maxObjects, timeout);
+    }
+
+    long getMaxOutputSize() {
+        return maxOutputSize;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    long getMaxObjects() {
+        return maxObjects;
+    }
+
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Returns the given writer, or a writer enforcing the output size budget.
+     */
+    @NotNull
+    Writer limit(@NotNull Writer writer) {
+        return maxOutputSize < 0 ? writer : new CountingWriter(writer, maxOutputSize);
+    }
+
+    /**
+     * Returns the given stream, or a stream enforcing the output size budget.
+     */
+    @NotNull
+    OutputStream limit(@NotNull OutputStream stream) {
+        return maxOutputSize < 0 ? stream : new CountingOutputStream(stream, maxOutputSize);
+    }
+
+    /**
+     * Returns the given generator, or a generator enforcing the nesting depth, object count and timeout budgets. The
+     * deadline of the export is set when the generator is created. With an output size budget the generator is
+     * wrapped as well, for enforcing it on the subtrees buffered by the {@link ResourceSerializer}.
+     */
+    @NotNull
+    JsonGenerator limit(@NotNull JsonGenerator generator) {
+        if (maxOutputSize < 0 && maxDepth < 0 && maxObjects < 0 && timeoutMillis < 0) {
+            return generator;
+        }
+        return new LimitingJsonGenerator(generator, this);
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Records the number, latency, output length and failures of exports per model class, export target and output
+ * format. All counters are striped, so recording does not contend between concurrent exports.
+ * <p>
+ * The metrics are only recorded if a configuration exists.
+ */
+@Component(
+        service = {ExportMetrics.class, ExportMetricsMBean.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"jmx.objectname=org.apache.sling.models.jacksonexporter:type=ExportMetrics"})
+@Designate(ocd = ExportMetrics.Config.class)
+public class ExportMetrics implements ExportMetricsMBean {
+
+    /**
+     * Upper bounds of the latency buckets in microseconds.
+     */
+    private static final long[] LATENCY_BUCKET_BOUNDS = {
+        100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+    };
+
+    /**
+     * Model classes are only referenced by name, the number of rows is bounded nevertheless in case model classes are
+     * generated.
+     */
+    static final int DEFAULT_MAX_ROWS = 1000;
+
+    static final String OTHER_MODEL_CLASSES = "other";
+
+    private static final String[] ITEM_NAMES = {
+        "modelClass", "target", "format", "count", "failures", "totalTimeMicros", "outputLength", "latencyHistogram"
+    };
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Models Jackson Exporter - Export Metrics",
+            description = "Records the number, latency, output length and failures of exports.")
+    static @interface Config {
+
+        @AttributeDefinition(
+                name = "Maximum Rows",
+                description = "Maximum number of combinations of model class, export target and output format which "
+                        + "are recorded separately. Exports of further model classes are recorded in rows of the "
+                        + "model class \"" + OTHER_MODEL_CLASSES + "\".")
+        int max_rows() default DEFAULT_MAX_ROWS;
+    }
+
+    private final ConcurrentMap<Target, ConcurrentMap<String, Statistics>> statisticsByTarget =
+            new ConcurrentHashMap<>();
+
+    private final LongAdder rowCount = new LongAdder();
+
+    private int maxRows = DEFAULT_MAX_ROWS;
+
+    @Activate
+    private void activate(Config config) {
+        this.maxRows = config.max_rows();
+    }
+
+    /**
+     * Records an export.
+     *
+     * @param modelClass the class of the exported model
+     * @param target the export target class
+     * @param format the name of the output format
+     * @param nanos the duration of the export
+     * @param outputLength the length of the output, or a negative value if not known
+     * @param success whether the export succeeded
+     */
+    void record(
+            @NotNull Class<?> modelClass,
+            @NotNull Class<?> target,
+            @NotNull String format,
+            long nanos,
+            long outputLength,
+            boolean success) {
+        getStatistics(modelClass, new Target(target, format)).record(nanos, outputLength, success);
+    }
+
+    private Statistics getStatistics(Class<?> modelClass, Target target) {
+        ConcurrentMap<String, Statistics> statistics = statisticsByTarget.get(target);
+        if (statistics == null) {
+            statistics = statisticsByTarget.computeIfAbsent(target, t -> new ConcurrentHashMap<>());
+        }
+        Statistics result = statistics.get(modelClass.getName());
+        if (result == null) {
+            String name = modelClass.getName();
+            if (rowCount.sum() >= maxRows) {
+                name = OTHER_MODEL_CLASSES;
+            }
+            result = statistics.computeIfAbsent(name, n -> {
+                rowCount.increment();
+                return new Statistics();
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public TabularData getStatistics() throws OpenDataException {
+        OpenType<?>[] itemTypes = {
+            SimpleType.STRING,
+            SimpleType.STRING,
+            SimpleType.STRING,
+            SimpleType.LONG,
+            SimpleType.LONG,
+            SimpleType.LONG,
+            SimpleType.LONG,
+            ArrayType.getPrimitiveArrayType(long[].class)
+        };
+        CompositeType rowType = new CompositeType(
+                "ExportStatistics",
+                "Export statistics of a model class, target and format",
+                ITEM_NAMES,
+                ITEM_NAMES,
+                itemTypes);
+        TabularType tableType = new TabularType(
+                "ExportStatisticsTable", "Export statistics by model class, target and format", rowType, new String[] {
+                    "modelClass", "target", "format"
+                });
+        TabularData table = new TabularDataSupport(tableType);
+        for (Map.Entry<Target, ConcurrentMap<String, Statistics>> byTarget : statisticsByTarget.entrySet()) {
+            String target = byTarget.getKey().type.getSimpleName();
+            String format = byTarget.getKey().format;
+            for (Map.Entry<String, Statistics> byModel : byTarget.getValue().entrySet()) {
+                Statistics statistics = byModel.getValue();
+                table.put(new CompositeDataSupport(rowType, ITEM_NAMES, new Object[] {
+                    byModel.getKey(),
+                    target,
+                    format,
+                    statistics.count.sum(),
+                    statistics.failures.sum(),
+                    TimeUnit.NANOSECONDS.toMicros(statistics.totalNanos.sum()),
+                    statistics.outputLength.sum(),
+                    statistics.getHistogram()
+                }));
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public long[] getLatencyBucketBounds() {
+        return LATENCY_BUCKET_BOUNDS.clone();
+    }
+
+    @Override
+    public void reset() {
+        statisticsByTarget.clear();
+        rowCount.reset();
+    }
+
+    /** An export target class in an output format */
+    private static final class Target {
+
+        private final Class<?> type;
+
+        private final String format;
+
+        Target(Class<?> type, String format) {
+            this.type = type;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) obj;
+            return type == other.type && format.equals(other.format);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, format);
+        }
+    }
+
+    private static final class Statistics {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAdder outputLength = new LongAdder();
+
+        private final LongAdder[] histogram = new LongAdder[LATENCY_BUCKET_BOUNDS.length + 1];
+
+        Statistics() {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos, long length, boolean success) {
+            count.increment();
+            if (!success) {
+                failures.increment();
+            }
+            totalNanos.add(nanos);
+            if (length > 0) {
+                outputLength.add(length);
+            }
+            long micros = nanos / 1000;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKET_BOUNDS.length && micros > LATENCY_BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            histogram[bucket].increment();
+        }
+
+        long[] getHistogram() {
+            long[] result = new long[histogram.length];
+            for (int i = 0; i < histogram.length; i++) {
+                result[i] = histogram[i].sum();
+            }
+            return result;
+        }
+    }
+}
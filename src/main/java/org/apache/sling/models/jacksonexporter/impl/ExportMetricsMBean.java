@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Management interface of the {@link ExportMetrics}.
+ */
+public interface ExportMetricsMBean {
+
+    /**
+     * Returns one row per model class, export target and output format, with the number of exports, the number of failed exports,
+     * the total export time in microseconds, the total output length and the latency histogram. The output length is
+     * counted in characters for text targets and in bytes for binary targets, it is not recorded for tree targets.
+     *
+     * @return the statistics
+     * @throws OpenDataException if the statistics cannot be converted to open data
+     */
+    TabularData getStatistics() throws OpenDataException;
+
+    /**
+     * @return the upper bounds of the latency histogram buckets in microseconds, except for the last bucket which
+     *     has no upper bound
+     */
+    long[] getLatencyBucketBounds();
+
+    /**
+     * Resets all statistics.
+     */
+    void reset();
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.models.jacksonexporter.CacheableModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for the serialized exports of {@link CacheableModel}s, bounded by the estimated size of the cached exports
+ * and evicting the least recently used ones first. Entries are indexed by the path of their cache resource and
+ * invalidated whenever that resource, one of its descendants or one of its ancestors changes.
+ * <p>
+ * The cache is only active if a configuration exists.
+ */
+@Component(
+        service = {ExportOutputCache.class, ResourceChangeListener.class, ExportOutputCacheMBean.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"jmx.objectname=org.apache.sling.models.jacksonexporter:type=ExportOutputCache"})
+@Designate(ocd = ExportOutputCache.Config.class)
+public class ExportOutputCache
+        implements ResourceChangeListener, ExternalResourceChangeListener, ExportOutputCacheMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportOutputCache.class);
+
+    /**
+     * Estimated memory used by an entry in addition to its key strings and its value.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Models Jackson Exporter - Output Cache",
+            description = "Caches the String, byte[] and DigestedExport exports of models implementing "
+                    + "CacheableModel until their cache resource changes.")
+    static @interface Config {
+
+        @AttributeDefinition(
+                name = "Maximum Size",
+                description = "Maximum estimated size of all cached exports in bytes.")
+        long max_size() default 32L * 1024 * 1024;
+
+        @AttributeDefinition(
+                name = "Maximum Entry Size",
+                description = "Maximum estimated size of a single cached export in bytes. Larger exports are not "
+                        + "cached.")
+        long max_entry_size() default 1024L * 1024;
+
+        @AttributeDefinition(
+                name = "Observed Paths",
+                description = "Only exports of models whose cache resource is located below one of these paths are "
+                        + "cached, as changes are only observed for them.")
+        String[] resource_paths() default {"/"};
+    }
+
+    private PathIndexedCache<Key, Object> cache;
+
+    private long maxEntrySize;
+
+    private String[] observedPaths;
+
+    @Activate
+    private void activate(Config config) {
+        long maxSize = config.max_size();
+        this.cache = new PathIndexedCache<>(maxSize);
+        this.maxEntrySize = Math.min(config.max_entry_size(), maxSize);
+        this.observedPaths = config.resource_paths();
+    }
+
+    @Deactivate
+    private void deactivate() {
+        clear();
+    }
+
+    /**
+     * Returns the cache key for the given export.
+     *
+     * @param model the model
+     * @param target the export target class
+     * @param mappingOptions the effective mapping options
+     * @param options the options passed to the export
+     * @param digestAlgorithm the algorithm of the digests of digested exports
+     * @param generation the generation of the exporter configuration and module providers used for the export, unique
+     *     within the JVM
+     * @return the key, or {@code null} if the export cannot be cached
+     */
+    @Nullable
+    Key getKey(
+            @NotNull Object model,
+            @NotNull Class<?> target,
+            @NotNull MappingOptions mappingOptions,
+            @NotNull Map<String, String> options,
+            @NotNull String digestAlgorithm,
+            long generation) {
+        if (!(model instanceof CacheableModel)) {
+            return null;
+        }
+        Resource resource = ((CacheableModel) model).getCacheResource();
+        if (resource == null || !isObserved(resource.getPath())) {
+            return null;
+        }
+        // without a resolver the user the export is serialized for is unknown
+        ResourceResolver resolver = resource.getResourceResolver();
+        if (resolver == null) {
+            return null;
+        }
+        return new Key(
+                model.getClass(),
+                resource.getPath(),
+                resolver.getUserID(),
+                target,
+                mappingOptions,
+                options,
+                digestAlgorithm,
+                generation);
+    }
+
+    /**
+     * Returns the number of invalidations so far, which has to be passed to {@link #put(Key, Object, long)} to make
+     * sure that no output serialized before an invalidation is cached afterwards.
+     */
+    long getEpoch() {
+        return cache.getEpoch();
+    }
+
+    /**
+     * Returns the cached output for the given key.
+     *
+     * @param key the key
+     * @return the cached output, which must not be modified, or {@code null}
+     */
+    @Nullable
+    Object get(@NotNull Key key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches the given output, unless it is too large or a resource changed since the given epoch.
+     *
+     * @param key the key
+     * @param value the serialized output, a {@code String}, a {@code byte[]} which must not be modified afterwards or
+     *     a digested export
+     * @param epochBeforeSerialization the value of {@link #getEpoch()} before the output was serialized
+     */
+    void put(@NotNull Key key, @NotNull Object value, long epochBeforeSerialization) {
+        long valueSize;
+        if (value instanceof JacksonDigestedExport) {
+            JacksonDigestedExport digestedExport = (JacksonDigestedExport) value;
+            valueSize = 2L * digestedExport.getContent().length() + 2L * digestedExport.getDigestLength();
+        } else if (value instanceof String) {
+            valueSize = 2L * ((String) value).length();
+        } else {
+            valueSize = ((byte[]) value).length;
+        }
+        long entrySize = key.size + valueSize;
+        if (entrySize > maxEntrySize) {
+            log.debug("Not caching export of {} with estimated size {}", key.path, entrySize);
+            return;
+        }
+        cache.put(key, key.path, value, entrySize, epochBeforeSerialization);
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        cache.onChange(changes);
+    }
+
+    private boolean isObserved(String path) {
+        return PathIndexedCache.isBelow(path, observedPaths);
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return cache.getInvalidationCount();
+    }
+
+    @Override
+    public int getEntryCount() {
+        return cache.getEntryCount();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Identifies a cached export. Besides the model and its cache resource, it contains everything else the output
+     * depends on: the user, the target, all options, the digest algorithm and the generation of the exporter
+     * configuration and module providers.
+     */
+    static final class Key {
+
+        private final Class<?> modelClass;
+
+        private final String path;
+
+        private final String userId;
+
+        private final Class<?> target;
+
+        private final MappingOptions mappingOptions;
+
+        private final Map<String, String> options;
+
+        private final String digestAlgorithm;
+
+        private final long generation;
+
+        private final int hashCode;
+
+        private final long size;
+
+        Key(
+                Class<?> modelClass,
+                String path,
+                String userId,
+                Class<?> target,
+                MappingOptions mappingOptions,
+                Map<String, String> options,
+                String digestAlgorithm,
+                long generation) {
+            this.modelClass = modelClass;
+            this.path = path;
+            this.userId = userId;
+            this.target = target;
+            this.mappingOptions = mappingOptions;
+            this.options = options.isEmpty() ? Collections.emptyMap() : new HashMap<>(options);
+            this.digestAlgorithm = digestAlgorithm;
+            this.generation = generation;
+            this.hashCode = Objects.hash(
+                    modelClass, path, userId, target, mappingOptions, this.options, digestAlgorithm, generation);
+            long keySize = ENTRY_OVERHEAD + 2L * path.length() + (userId != null ? 2L * userId.length() : 0);
+            for (Map.Entry<String, String> option : this.options.entrySet()) {
+                keySize += 2L
+                        * (option.getKey().length()
+                                + String.valueOf(option.getValue()).length());
+            }
+            this.size = keySize;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && generation == other.generation
+                    && modelClass == other.modelClass
+                    && target == other.target
+                    && path.equals(other.path)
+                    && Objects.equals(userId, other.userId)
+                    && mappingOptions.equals(other.mappingOptions)
+                    && options.equals(other.options)
+                    && digestAlgorithm.equals(other.digestAlgorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+/**
+ * Management interface of the {@link ExportOutputCache}.
+ */
+public interface ExportOutputCacheMBean {
+
+    /**
+     * @return number of exports served from the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return number of cacheable exports which had to be serialized
+     */
+    long getMissCount();
+
+    /**
+     * @return number of entries removed to stay within the maximum size
+     */
+    long getEvictionCount();
+
+    /**
+     * @return number of entries removed because of resource changes
+     */
+    long getInvalidationCount();
+
+    /**
+     * @return number of cached exports
+     */
+    int getEntryCount();
+
+    /**
+     * @return estimated size of all cached exports in bytes
+     */
+    long getSize();
+
+    /**
+     * @return maximum size of all cached exports in bytes
+     */
+    long getMaxSize();
+
+    /**
+     * Removes all cached exports.
+     */
+    void clear();
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cache of pre-encoded field names, so that recurring names like {@code jcr:primaryType} are quoted and encoded once
+ * and afterwards copied into the output of every export.
+ * <p>
+ * Pre-encoded names are written without applying the character escapes of the generator. Only names consisting of
+ * characters which are never escaped are cached, and they are only used with generators without custom escapes or
+ * with the escapes of the exporter, all other names are written as is.
+ */
+final class FieldNameCache {
+
+    /**
+     * Field names are taken from content, so the number of cached names has to be bounded.
+     */
+    static final int MAX_CACHED_NAMES = 4096;
+
+    static final int MAX_NAME_LENGTH = 128;
+
+    private final String prefix;
+
+    private final ConcurrentMap<String, SerializableString> names = new ConcurrentHashMap<>();
+
+    /**
+     * @param prefix the prefix prepended to all names
+     */
+    FieldNameCache(@NotNull String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Writes the prefixed field name for the given key.
+     *
+     * @param jgen the generator
+     * @param key the key
+     * @throws IOException if writing failed
+     */
+    void writeFieldName(@NotNull JsonGenerator jgen, @NotNull String key) throws IOException {
+        CharacterEscapes escapes = jgen.getCharacterEscapes();
+        if (escapes == null || escapes == JacksonExporter.ESCAPES) {
+            SerializableString name = names.get(key);
+            if (name == null && names.size() < MAX_CACHED_NAMES && isSafe(key)) {
+                name = names.computeIfAbsent(key, k -> new SerializedString(prefix + k));
+            }
+            if (name != null) {
+                jgen.writeFieldName(name);
+                return;
+            }
+        }
+        jgen.writeFieldName(prefix.isEmpty() ? key : prefix + key);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    private static boolean isSafe(String key) {
+        if (key.isEmpty() || key.length() > MAX_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z')
+                    || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9')
+                    || c == ':'
+                    || c == '_'
+                    || c == '-'
+                    || c == '.';
+            if (!safe) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
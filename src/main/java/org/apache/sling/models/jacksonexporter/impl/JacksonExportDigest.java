@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Base64;
+
+import org.apache.sling.models.jacksonexporter.ExportDigest;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable {@link ExportDigest}.
+ */
+class JacksonExportDigest implements ExportDigest {
+
+    private final String algorithm;
+
+    private final byte[] digest;
+
+    private final String etag;
+
+    JacksonExportDigest(@NotNull String algorithm, @NotNull byte[] digest) {
+        this.algorithm = algorithm;
+        this.digest = digest;
+        this.etag = '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"';
+    }
+
+    @Override
+    public @NotNull String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public @NotNull byte[] getDigest() {
+        return digest.clone();
+    }
+
+    @Override
+    public @NotNull String getETag() {
+        return etag;
+    }
+
+    int getDigestLength() {
+        return digest.length;
+    }
+}
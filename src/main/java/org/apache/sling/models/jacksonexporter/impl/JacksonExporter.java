@@ -19,46 +19,85 @@
 package org.apache.sling.models.jacksonexporter.impl;
 
 import java.io.IOException;
-import java.io.StringWriter;
-import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.StreamWriteConstraints;
 import com.fasterxml.jackson.core.io.CharacterEscapes;
-import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.apache.sling.models.export.spi.ModelExporter;
 import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.DigestedExport;
 import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
 import org.jetbrains.annotations.NotNull;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-@Component(service = ModelExporter.class)
+@Component(service = {ModelExporter.class, JacksonExporter.class})
 @Designate(ocd = JacksonExporter.Config.class)
 public class JacksonExporter implements ModelExporter {
 
     private static final Logger log = LoggerFactory.getLogger(JacksonExporter.class);
 
-    private static final String SERIALIZATION_FEATURE_PREFIX = SerializationFeature.class.getSimpleName() + ".";
+    /**
+     * The escapes are immutable, so a single instance is shared by all JSON factories.
+     */
+    static final CharacterEscapes ESCAPES = new EscapeCloseScriptBlocks();
 
-    private static final int SERIALIZATION_FEATURE_PREFIX_LENGTH = SERIALIZATION_FEATURE_PREFIX.length();
+    /**
+     * Context attribute of the {@link ObjectWriter} holding the options of the current export starting with
+     * {@link #SERIALIZER_OPTIONS_PREFIX}, so serializers can adapt their output to an export. Only set if there are
+     * such options.
+     */
+    static final String EXPORT_OPTIONS_ATTRIBUTE = JacksonExporter.class.getName() + ".options";
 
-    private static final String MAPPER_FEATURE_PREFIX = MapperFeature.class.getSimpleName() + ".";
+    /**
+     * Context attribute of the {@link ObjectWriter} holding the serializer factory of its mapper, for serializers
+     * creating serializer providers of their own.
+     */
+    static final String SERIALIZER_FACTORY_ATTRIBUTE = JacksonExporter.class.getName() + ".serializerFactory";
 
-    private static final int MAPPER_FEATURE_PREFIX_LENGTH = MAPPER_FEATURE_PREFIX.length();
+    /**
+     * Prefix of the export options which are passed to the serializers, all other options do not affect them.
+     */
+    static final String SERIALIZER_OPTIONS_PREFIX = "resource.";
+
+    private static final String SERVICE_RANKING = "service.ranking";
+
+    private static final String SERVICE_ID = "service.id";
+
+    private static final String DEFAULT_DIGEST_ALGORITHM = "SHA-256";
 
     @ObjectClassDefinition(
             name = "Apache Sling Models Jackson Exporter",
@@ -72,90 +111,358 @@ public class JacksonExporter implements ModelExporter {
                                 + "Mapping options that are passed via request parameters have higher precedence. "
                                 + "Example: SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS=true, MapperFeature.SORT_PROPERTIES_ALPHABETICALLY=true")
         String[] mapping_options();
+
+        @AttributeDefinition(
+                name = "Digest algorithm",
+                description = "Message digest algorithm used for the digests of DigestedExport and StreamingExport, "
+                        + "e.g. for entity tags.")
+        String digest_algorithm() default DEFAULT_DIGEST_ALGORITHM;
+
+        @AttributeDefinition(
+                name = "Maximum output size",
+                description = "Maximum size of an export, in characters for text and in bytes for binary targets. "
+                        + "Exports exceeding it are aborted while being generated. Specify -1 for no limit.")
+        long max_output_size() default -1;
+
+        @AttributeDefinition(
+                name = "Maximum nesting depth",
+                description = "Maximum nesting depth of JSON objects and arrays of an export. "
+                        + "Exports exceeding it are aborted while being generated. Specify -1 for no limit.")
+        int max_depth() default -1;
+
+        @AttributeDefinition(
+                name = "Maximum object count",
+                description = "Maximum number of JSON objects of an export. "
+                        + "Exports exceeding it are aborted while being generated. Specify -1 for no limit.")
+        long max_objects() default -1;
+
+        @AttributeDefinition(
+                name = "Timeout",
+                description = "Maximum duration of generating an export in milliseconds. The deadline is checked "
+                        + "between properties and between child resources, exports exceeding it are aborted. "
+                        + "The timeout option of an export may only shorten it. Specify -1 for no limit.")
+        long timeout() default -1;
     }
 
+    /**
+     * Source of the mapper generations, shared by all exporter instances so that the cached output of an instance
+     * with another configuration or other module providers never matches the exports of this one.
+     */
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final List<BoundModuleProvider> moduleProviders = new ArrayList<>();
+
+    private volatile ObjectMapperCache mapperCache =
+            new ObjectMapperCache(GENERATIONS.incrementAndGet(), new ArrayList<>());
+
+    private MappingOptionsResolver optionsResolver;
+
+    /**
+     * Factory for all JSON generators, shared by all exports so that its symbol tables and buffer recycling are
+     * shared as well. Its nesting depth constraint is the configured maximum depth, so deep resource trees are only
+     * limited by the configuration.
+     */
+    private JsonFactory jsonFactory;
+
+    private String digestAlgorithm;
+
+    private ExportLimits limits = ExportLimits.NONE;
+
     @Reference(
-            service = ModuleProvider.class,
-            cardinality = ReferenceCardinality.MULTIPLE,
-            policy = ReferencePolicy.DYNAMIC)
-    private volatile Collection<ModuleProvider> moduleProviders;
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile ExportOutputCache outputCache;
 
-    private Map<String, String> mappingOptions;
+    @Reference(
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile ExportMetrics metrics;
 
     @Override
     public boolean isSupported(@NotNull Class<?> clazz) {
-        return clazz.equals(String.class) || clazz.equals(Map.class);
+        return clazz.equals(String.class)
+                || clazz.equals(byte[].class)
+                || clazz.equals(Map.class)
+                || clazz.equals(JsonNode.class)
+                || clazz.equals(TokenBuffer.class)
+                || clazz.equals(StreamingExport.class)
+                || clazz.equals(DigestedExport.class);
     }
 
     @Override
-    @SuppressWarnings({"null", "unchecked"})
     public <T> T export(@NotNull Object model, @NotNull Class<T> clazz, @NotNull Map<String, String> options)
             throws ExportException {
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, String> mergedOptions = mergeWithConfiguredOptions(options);
-        for (Map.Entry<String, String> optionEntry : mergedOptions.entrySet()) {
-            String key = optionEntry.getKey();
-            if (key.startsWith(SERIALIZATION_FEATURE_PREFIX)) {
-                String enumName = key.substring(SERIALIZATION_FEATURE_PREFIX_LENGTH);
-                try {
-                    SerializationFeature feature = SerializationFeature.valueOf(enumName);
-                    mapper.configure(feature, Boolean.valueOf(optionEntry.getValue()));
-                } catch (IllegalArgumentException e) {
-                    log.warn("Bad SerializationFeature option: {}", enumName);
-                }
-            } else if (key.startsWith(MAPPER_FEATURE_PREFIX)) {
-                String enumName = key.substring(MAPPER_FEATURE_PREFIX_LENGTH);
-                try {
-                    MapperFeature feature = MapperFeature.valueOf(enumName);
-                    mapper.configure(feature, Boolean.valueOf(optionEntry.getValue()));
-                } catch (IllegalArgumentException e) {
-                    log.warn("Bad MapperFeature option: {}", enumName);
-                }
-            }
+        return export(model, clazz, options, jsonFactory);
+    }
+
+    /**
+     * Exports the model like {@link #export(Object, Class, Map)}, but generates the {@code byte[]} and
+     * {@link StreamingExport} targets with the given factory. Used by the exporters of binary formats, which share
+     * the module providers, mapping options and limits of this exporter.
+     *
+     * @param model the model
+     * @param clazz the export target class
+     * @param options the export options
+     * @param factory the factory creating the generators of the output format
+     * @return the exported model
+     * @throws ExportException if the export failed
+     */
+    <T> T export(
+            @NotNull Object model,
+            @NotNull Class<T> clazz,
+            @NotNull Map<String, String> options,
+            @NotNull JsonFactory factory)
+            throws ExportException {
+        ExportMetrics exportMetrics = this.metrics;
+        if (exportMetrics == null || clazz.equals(StreamingExport.class)) {
+            // streaming exports are recorded when written
+            return doExport(model, clazz, options, factory);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        T result = null;
+        try {
+            result = doExport(model, clazz, options, factory);
+            success = true;
+            return result;
+        } finally {
+            exportMetrics.record(
+                    model.getClass(),
+                    clazz,
+                    factory.getFormatName(),
+                    System.nanoTime() - start,
+                    getLength(result),
+                    success);
         }
-        for (ModuleProvider moduleProvider : moduleProviders) {
-            mapper.registerModule(moduleProvider.getModule());
+    }
+
+    private static long getLength(Object output) {
+        if (output instanceof String) {
+            return ((String) output).length();
+        } else if (output instanceof byte[]) {
+            return ((byte[]) output).length;
+        } else if (output instanceof DigestedExport) {
+            return ((DigestedExport) output).getContent().length();
         }
+        return -1;
+    }
+
+    @SuppressWarnings({"null", "unchecked"})
+    private <T> T doExport(
+            @NotNull Object model,
+            @NotNull Class<T> clazz,
+            @NotNull Map<String, String> options,
+            @NotNull JsonFactory factory)
+            throws ExportException {
+        MappingOptions mappingOptions = optionsResolver.resolve(options);
+        ObjectMapperCache mappers = this.mapperCache;
+        ObjectWriter writer = mappers.getWriter(mappingOptions, options, clazz.equals(Map.class));
+        ExportLimits exportLimits = limits.withOptions(options);
 
         if (clazz.equals(Map.class)) {
-            return (T) mapper.convertValue(model, Map.class);
-        } else if (clazz.equals(String.class)) {
-            final JsonFactory f = new JsonFactory();
-            f.setCharacterEscapes(new EscapeCloseScriptBlocks());
-            StringWriter writer = new StringWriter();
-            JsonGenerator jgen;
-            final boolean printTidy;
-            if (mergedOptions.containsKey("tidy")) {
-                printTidy = Boolean.valueOf(mergedOptions.get("tidy"));
-            } else {
-                printTidy = false;
+            ObjectMapper mapper = mappers.getMapper(mappingOptions);
+            MapBuildingGenerator generator = new MapBuildingGenerator(mapper);
+            try {
+                // the writer of Map exports does not wrap the root value
+                writer.writeValue(exportLimits.limit(generator), model);
+                Object value = generator.getRootValue();
+                if (value == null || value instanceof Map) {
+                    return (T) value;
+                }
+                // models not serialized as JSON object fail or get coerced like before
+                return (T) mapper.convertValue(value, Map.class);
+            } catch (final ExportLimitExceededException e) {
+                throw toExportException(e);
+            } catch (final IOException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
             }
+        } else if (clazz.equals(String.class) || clazz.equals(byte[].class) || clazz.equals(DigestedExport.class)) {
+            // the output of other formats is not cached, the cache keys do not distinguish formats
+            ExportOutputCache cache = factory == jsonFactory ? this.outputCache : null;
+            ExportOutputCache.Key cacheKey = cache != null
+                    ? cache.getKey(model, clazz, mappingOptions, options, digestAlgorithm, mappers.getGeneration())
+                    : null;
+            if (cacheKey == null) {
+                return (T) serialize(writer, model, clazz, exportLimits, factory);
+            }
+            Object output = cache.get(cacheKey);
+            if (output == null) {
+                long epoch = cache.getEpoch();
+                output = serialize(writer, model, clazz, exportLimits, factory);
+                cache.put(cacheKey, output, epoch);
+            }
+            // the cached array must not be modified by callers
+            return (T) (output instanceof byte[] ? ((byte[]) output).clone() : output);
+        } else if (clazz.equals(JsonNode.class) || clazz.equals(TokenBuffer.class)) {
+            // in-JVM targets which can be merged, filtered or replayed without encoding and parsing text
+            ObjectMapper mapper = mappers.getMapper(mappingOptions);
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
             try {
-                jgen = f.createGenerator(writer);
-                if (printTidy) {
-                    mapper.writerWithDefaultPrettyPrinter().writeValue(jgen, model);
-                } else {
-                    mapper.writeValue(jgen, model);
+                writer.writeValue(exportLimits.limit(buffer), model);
+                if (clazz.equals(TokenBuffer.class)) {
+                    return (T) buffer;
+                }
+                try (JsonParser parser = buffer.asParser()) {
+                    // keep decimals as written, like the String target does
+                    return (T) mapper.reader()
+                            .without(JsonNodeFeature.STRIP_TRAILING_BIGDECIMAL_ZEROES)
+                            .readTree(parser);
                 }
             } catch (final IOException e) {
-                throw new ExportException(e);
+                throw toExportException(e);
             }
-            return (T) writer.toString();
+        } else if (clazz.equals(StreamingExport.class)) {
+            return (T) new JacksonStreamingExport(factory, writer, model, digestAlgorithm, exportLimits, metrics);
         } else {
             return null;
         }
     }
 
-    private Map<String, String> mergeWithConfiguredOptions(@NotNull Map<String, String> options) {
-        Map<String, String> mergedMap = new LinkedHashMap<>();
-        mergedMap.putAll(mappingOptions);
-        mergedMap.putAll(options);
-        return mergedMap;
+    /**
+     * Serializes the model to a {@code String}, to a {@link DigestedExport} or to a {@code byte[]}, which is UTF-8
+     * encoded JSON for the JSON factory.
+     */
+    private Object serialize(
+            ObjectWriter writer, Object model, Class<?> clazz, ExportLimits limits, JsonFactory factory)
+            throws ExportException {
+        final BufferRecycler recycler = factory._getBufferRecycler();
+        try {
+            if (clazz.equals(String.class)) {
+                try (SegmentedStringWriter stringWriter = new SegmentedStringWriter(recycler)) {
+                    write(writer, model, createGenerator(factory, limits.limit(stringWriter), limits));
+                    return stringWriter.getAndClear();
+                }
+            }
+            if (clazz.equals(DigestedExport.class)) {
+                try (SegmentedStringWriter stringWriter = new SegmentedStringWriter(recycler)) {
+                    DigestingWriter digestingWriter = new DigestingWriter(stringWriter, newDigest(digestAlgorithm));
+                    write(writer, model, createGenerator(factory, limits.limit(digestingWriter), limits));
+                    byte[] digest = digestingWriter.digest();
+                    return new JacksonDigestedExport(stringWriter.getAndClear(), digestAlgorithm, digest);
+                }
+            }
+            // encodes to UTF-8 while generating, the length of the returned array is the exact content length
+            final ByteArrayBuilder byteBuilder = new ByteArrayBuilder(recycler);
+            try {
+                write(writer, model, createGenerator(factory, limits.limit(byteBuilder), limits));
+                return byteBuilder.toByteArray();
+            } finally {
+                byteBuilder.release();
+            }
+        } catch (final IOException e) {
+            throw toExportException(e);
+        } finally {
+            recycler.releaseToPool();
+        }
+    }
+
+    private static JsonGenerator createGenerator(JsonFactory factory, Writer target, ExportLimits limits)
+            throws IOException {
+        return limits.limit(factory.createGenerator(target));
+    }
+
+    private static JsonGenerator createGenerator(JsonFactory factory, OutputStream target, ExportLimits limits)
+            throws IOException {
+        return limits.limit(factory.createGenerator(target, JsonEncoding.UTF8));
+    }
+
+    /**
+     * Serializes the model with the given writer and closes the generator afterwards. On failure the generator is
+     * closed without completing the partially written JSON content.
+     */
+    static void write(ObjectWriter writer, Object model, JsonGenerator jgen) throws IOException {
+        try {
+            writer.writeValue(jgen, model);
+        } catch (Exception e) {
+            ClassUtil.closeOnFailAndThrowAsIOE(jgen, e);
+        }
+        jgen.close();
+    }
+
+    /**
+     * Converts a failure of an export, reporting an exceeded budget with its own message.
+     */
+    static ExportException toExportException(IOException e) {
+        ExportLimitExceededException exceeded = ExportLimitExceededException.find(e);
+        if (exceeded != null) {
+            ExportException exception = new ExportException(exceeded.getMessage());
+            exception.initCause(e);
+            return exception;
+        }
+        return new ExportException(e);
+    }
+
+    /**
+     * Returns a new message digest for an algorithm validated on activation.
+     */
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Digest algorithm not available: " + algorithm, e);
+        }
     }
 
     @Activate
     private void activate(Config config) {
-        this.mappingOptions = PropertiesUtil.toMap(config.mapping_options());
+        this.optionsResolver = new MappingOptionsResolver(PropertiesUtil.toMap(config.mapping_options()));
+        this.jsonFactory = new JsonFactoryBuilder()
+                .characterEscapes(ESCAPES)
+                .streamWriteConstraints(StreamWriteConstraints.builder()
+                        .maxNestingDepth(config.max_depth() >= 0 ? config.max_depth() : Integer.MAX_VALUE)
+                        .build())
+                .build();
+        String algorithm = config.digest_algorithm();
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            log.warn("Digest algorithm {} is not available, using {}", algorithm, DEFAULT_DIGEST_ALGORITHM);
+            algorithm = DEFAULT_DIGEST_ALGORITHM;
+        }
+        this.digestAlgorithm = algorithm;
+        this.limits =
+                new ExportLimits(config.max_output_size(), config.max_depth(), config.max_objects(), config.timeout());
+        // the output cached by a previous instance is not used by this one
+        ExportOutputCache cache = this.outputCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    @Reference(
+            service = ModuleProvider.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC)
+    protected void bindModuleProvider(ModuleProvider moduleProvider, Map<String, Object> properties) {
+        synchronized (moduleProviders) {
+            moduleProviders.add(new BoundModuleProvider(moduleProvider, properties));
+            Collections.sort(moduleProviders);
+            updateMapperCache();
+        }
+    }
+
+    protected void unbindModuleProvider(ModuleProvider moduleProvider, Map<String, Object> properties) {
+        synchronized (moduleProviders) {
+            if (moduleProviders.removeIf(p -> p.moduleProvider == moduleProvider)) {
+                updateMapperCache();
+            }
+        }
+    }
+
+    /**
+     * Replaces the mapper cache with an empty one for the current module providers. Must be called while holding
+     * the lock on {@link #moduleProviders}.
+     */
+    private void updateMapperCache() {
+        List<ModuleProvider> providers = new ArrayList<>(moduleProviders.size());
+        for (BoundModuleProvider boundModuleProvider : moduleProviders) {
+            providers.add(boundModuleProvider.moduleProvider);
+        }
+        long generation = GENERATIONS.incrementAndGet();
+        mapperCache = new ObjectMapperCache(generation, providers);
+        log.debug("Module providers changed, using mapper generation {}", generation);
     }
 
     @Override
@@ -163,6 +470,35 @@ public class JacksonExporter implements ModelExporter {
         return "jackson";
     }
 
+    /**
+     * Orders module providers like Declarative Services orders the services of a multiple reference: ascending by
+     * service ranking, so that the modules of higher ranked providers are registered last and take precedence.
+     */
+    private static final class BoundModuleProvider implements Comparable<BoundModuleProvider> {
+
+        private final ModuleProvider moduleProvider;
+
+        private final int ranking;
+
+        private final long serviceId;
+
+        BoundModuleProvider(ModuleProvider moduleProvider, Map<String, Object> properties) {
+            this.moduleProvider = moduleProvider;
+            Object rankingValue = properties.get(SERVICE_RANKING);
+            this.ranking = rankingValue instanceof Integer ? (Integer) rankingValue : 0;
+            Object serviceIdValue = properties.get(SERVICE_ID);
+            this.serviceId = serviceIdValue instanceof Long ? (Long) serviceIdValue : 0L;
+        }
+
+        @Override
+        public int compareTo(BoundModuleProvider other) {
+            if (ranking != other.ranking) {
+                return Integer.compare(ranking, other.ranking);
+            }
+            return Long.compare(other.serviceId, serviceId);
+        }
+    }
+
     private static class EscapeCloseScriptBlocks extends CharacterEscapes {
         private static final long serialVersionUID = 384022064440034138L;
 
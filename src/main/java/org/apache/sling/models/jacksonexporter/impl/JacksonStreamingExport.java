@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.ExportDigest;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Deferred export of a model, which is serialized with the writer resolved at export time once a sink is given. The
+ * output format is the one of the given factory, binary formats can only be written to streams and generators.
+ */
+class JacksonStreamingExport implements StreamingExport {
+
+    private final JsonFactory jsonFactory;
+
+    private final ObjectWriter writer;
+
+    private final Object model;
+
+    private final String digestAlgorithm;
+
+    private final ExportLimits limits;
+
+    private final ExportMetrics metrics;
+
+    JacksonStreamingExport(
+            JsonFactory jsonFactory,
+            ObjectWriter writer,
+            Object model,
+            String digestAlgorithm,
+            ExportLimits limits,
+            @Nullable ExportMetrics metrics) {
+        this.jsonFactory = jsonFactory;
+        this.writer = writer;
+        this.model = model;
+        this.digestAlgorithm = digestAlgorithm;
+        this.limits = limits;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void writeTo(@NotNull Writer target) throws ExportException {
+        if (metrics == null) {
+            write(target);
+            return;
+        }
+        CountingWriter countingWriter = new CountingWriter(target);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            write(countingWriter);
+            success = true;
+        } finally {
+            record(start, countingWriter.getCount(), success);
+        }
+    }
+
+    @Override
+    public void writeTo(@NotNull OutputStream target) throws ExportException {
+        if (metrics == null) {
+            write(target);
+            return;
+        }
+        CountingOutputStream countingStream = new CountingOutputStream(target);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            write(countingStream);
+            success = true;
+        } finally {
+            record(start, countingStream.getCount(), success);
+        }
+    }
+
+    @Override
+    public @NotNull ExportDigest writeDigestedTo(@NotNull Writer target) throws ExportException {
+        DigestingWriter digestingWriter = new DigestingWriter(target, JacksonExporter.newDigest(digestAlgorithm));
+        writeTo(digestingWriter);
+        return new JacksonExportDigest(digestAlgorithm, digestingWriter.digest());
+    }
+
+    @Override
+    public @NotNull ExportDigest writeDigestedTo(@NotNull OutputStream target) throws ExportException {
+        MessageDigest digest = JacksonExporter.newDigest(digestAlgorithm);
+        writeTo(new DigestOutputStream(target, digest));
+        return new JacksonExportDigest(digestAlgorithm, digest.digest());
+    }
+
+    @Override
+    public void writeTo(@NotNull JsonGenerator generator) throws ExportException {
+        long start = System.nanoTime();
+        boolean success = false;
+        CharacterEscapes escapes = generator.getCharacterEscapes();
+        try {
+            if (escapes == null) {
+                generator.setCharacterEscapes(JacksonExporter.ESCAPES);
+            }
+            writer.writeValue(limits.limit(generator), model);
+            success = true;
+        } catch (IOException e) {
+            throw JacksonExporter.toExportException(e);
+        } finally {
+            if (escapes == null) {
+                generator.setCharacterEscapes(null);
+            }
+            record(start, -1, success);
+        }
+    }
+
+    private void write(Writer target) throws ExportException {
+        if (!jsonFactory.canUseCharArrays()) {
+            throw new ExportException("Exports in " + jsonFactory.getFormatName()
+                    + " format can only be written to a stream or generator");
+        }
+        try {
+            JsonGenerator jgen = jsonFactory.createGenerator(limits.limit(target));
+            JacksonExporter.write(writer, model, limits.limit(jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)));
+        } catch (IOException e) {
+            throw JacksonExporter.toExportException(e);
+        }
+    }
+
+    private void write(OutputStream target) throws ExportException {
+        try {
+            JsonGenerator jgen = jsonFactory.createGenerator(limits.limit(target), JsonEncoding.UTF8);
+            JacksonExporter.write(writer, model, limits.limit(jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)));
+        } catch (IOException e) {
+            throw JacksonExporter.toExportException(e);
+        }
+    }
+
+    private void record(long start, long outputLength, boolean success) {
+        if (metrics != null) {
+            metrics.record(
+                    model.getClass(),
+                    StreamingExport.class,
+                    jsonFactory.getFormatName(),
+                    System.nanoTime() - start,
+                    outputLength,
+                    success);
+        }
+    }
+}
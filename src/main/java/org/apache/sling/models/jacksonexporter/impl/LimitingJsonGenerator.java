@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+
+/**
+ * Generator which enforces the nesting depth, object count and timeout budgets of an export while the content is
+ * generated, so the export is aborted as soon as a budget is exceeded rather than after the whole content was
+ * buffered. The deadline is checked cooperatively whenever a property name or a container is written, which is
+ * between the getters of models and between the child resources written by the {@link ResourceSerializer}.
+ * <p>
+ * Subtrees which the {@link ResourceSerializer} buffers in parallel are written through {@link #subtree generators}
+ * sharing the object count and the deadline of the export generator.
+ */
+class LimitingJsonGenerator extends JsonGeneratorDelegate {
+
+    private final ExportLimits limits;
+
+    private int depth;
+
+    private final AtomicLong objects;
+
+    private final long deadline;
+
+    /** the characters buffered by the subtree generators of the export, or null if they are not counted */
+    private final AtomicLong bufferedChars;
+
+    LimitingJsonGenerator(JsonGenerator delegate, ExportLimits limits) {
+        // copy methods must not bypass the checks of this generator
+        super(delegate, false);
+        this.limits = limits;
+        this.objects = new AtomicLong();
+        this.deadline = limits.getTimeoutMillis() >= 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limits.getTimeoutMillis())
+                : 0;
+        this.bufferedChars = null;
+    }
+
+    private LimitingJsonGenerator(
+            JsonGenerator buffer, LimitingJsonGenerator parent, int depth, AtomicLong bufferedChars) {
+        super(buffer, false);
+        this.limits = parent.limits;
+        this.depth = depth;
+        this.objects = parent.objects;
+        this.deadline = parent.deadline;
+        this.bufferedChars = bufferedChars;
+    }
+
+    /**
+     * Returns a generator enforcing the budgets of this generator on a subtree which another thread writes into the
+     * given buffer at the given depth. The object count and the deadline are shared with this generator. The output
+     * size of buffered content is only known once it is written to the output, so the characters of the buffered
+     * names and strings of text formats are counted against the output size budget as its lower bound.
+     *
+     * @param buffer the buffer of the subtree
+     * @param depth the nesting depth of the subtree
+     * @param bufferedChars the characters buffered by all subtrees of the export
+     * @return the generator of the subtree
+     */
+    LimitingJsonGenerator subtree(JsonGenerator buffer, int depth, AtomicLong bufferedChars) {
+        boolean countOutput = limits.getMaxOutputSize() >= 0 && !delegate.canWriteBinaryNatively();
+        return new LimitingJsonGenerator(buffer, this, depth, countOutput ? bufferedChars : null);
+    }
+
+    /**
+     * Returns whether this generator checks the written content, so raw content must not bypass it. The output size
+     * budget alone is enforced by the output of the export.
+     */
+    boolean limitsContent() {
+        return limits.getMaxDepth() >= 0 || limits.getMaxObjects() >= 0 || limits.getTimeoutMillis() >= 0;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the nanoseconds left until the deadline of the export, or {@link Long#MAX_VALUE} if there is none.
+     */
+    long getRemainingNanos() {
+        return limits.getTimeoutMillis() >= 0 ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    ExportLimitExceededException timeoutExceeded() {
+        return new ExportLimitExceededException("Export exceeds the timeout of " + limits.getTimeoutMillis() + " ms");
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        checkDeadline();
+        buffered(name.length());
+        super.writeFieldName(name);
+    }
+
+    @Override
+    public void writeFieldName(SerializableString name) throws IOException {
+        checkDeadline();
+        buffered(name.charLength());
+        super.writeFieldName(name);
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        if (text != null) {
+            buffered(text.length());
+        }
+        super.writeString(text);
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        enter(false);
+        super.writeStartArray();
+    }
+
+    @Override
+    public void writeStartArray(int size) throws IOException {
+        enter(false);
+        super.writeStartArray(size);
+    }
+
+    @Override
+    public void writeStartArray(Object forValue) throws IOException {
+        enter(false);
+        super.writeStartArray(forValue);
+    }
+
+    @Override
+    public void writeStartArray(Object forValue, int size) throws IOException {
+        enter(false);
+        super.writeStartArray(forValue, size);
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        super.writeEndArray();
+        depth--;
+    }
+
+    @Override
+    public void writeArray(int[] array, int offset, int length) throws IOException {
+        enter(false);
+        super.writeArray(array, offset, length);
+        depth--;
+    }
+
+    @Override
+    public void writeArray(long[] array, int offset, int length) throws IOException {
+        enter(false);
+        super.writeArray(array, offset, length);
+        depth--;
+    }
+
+    @Override
+    public void writeArray(double[] array, int offset, int length) throws IOException {
+        enter(false);
+        super.writeArray(array, offset, length);
+        depth--;
+    }
+
+    @Override
+    public void writeArray(String[] array, int offset, int length) throws IOException {
+        enter(false);
+        super.writeArray(array, offset, length);
+        depth--;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        enter(true);
+        super.writeStartObject();
+    }
+
+    @Override
+    public void writeStartObject(Object forValue) throws IOException {
+        enter(true);
+        super.writeStartObject(forValue);
+    }
+
+    @Override
+    public void writeStartObject(Object forValue, int size) throws IOException {
+        enter(true);
+        super.writeStartObject(forValue, size);
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        super.writeEndObject();
+        depth--;
+    }
+
+    private void enter(boolean object) throws ExportLimitExceededException {
+        checkDeadline();
+        if (++depth > limits.getMaxDepth() && limits.getMaxDepth() >= 0) {
+            throw new ExportLimitExceededException(
+                    "Export exceeds the maximum nesting depth of " + limits.getMaxDepth());
+        }
+        if (object && objects.incrementAndGet() > limits.getMaxObjects() && limits.getMaxObjects() >= 0) {
+            throw new ExportLimitExceededException(
+                    "Export exceeds the maximum number of " + limits.getMaxObjects() + " objects");
+        }
+    }
+
+    void checkDeadline() throws ExportLimitExceededException {
+        if (limits.getTimeoutMillis() >= 0 && System.nanoTime() - deadline > 0) {
+            throw timeoutExceeded();
+        }
+    }
+
+    private void buffered(int length) throws ExportLimitExceededException {
+        if (bufferedChars != null && bufferedChars.addAndGet(length) > limits.getMaxOutputSize()) {
+            throw new ExportLimitExceededException(
+                    "Export exceeds the maximum output size of " + limits.getMaxOutputSize() + " characters");
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.base.GeneratorBase;
+import com.fasterxml.jackson.core.json.JsonWriteContext;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Generator which builds the {@link LinkedHashMap}/{@link ArrayList} structure of the {@code Map} export directly
+ * from the serializer output, instead of buffering all tokens in a {@code TokenBuffer} and deserializing them again.
+ * Values are stored exactly like the untyped deserialization of a {@code TokenBuffer} returned them: numbers keep the
+ * boxed type they were written with unless written as text, binary data, raw values and embedded objects are stored
+ * as is.
+ */
+final class MapBuildingGenerator extends GeneratorBase {
+
+    private final Deque<Object> containers = new ArrayDeque<>();
+
+    private Object rootValue;
+
+    MapBuildingGenerator(ObjectCodec codec) {
+        super(JsonGenerator.Feature.collectDefaults(), codec);
+    }
+
+    /**
+     * Returns the value written at root level, which is a {@code Map} for all models serialized as JSON object.
+     */
+    @Nullable
+    Object getRootValue() {
+        return rootValue;
+    }
+
+    @Override
+    public void writeStartArray() throws IOException {
+        _verifyValueWrite("start an array");
+        List<Object> list = new ArrayList<>();
+        addValue(list);
+        containers.push(list);
+        _writeContext = _writeContext.createChildArrayContext();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException {
+        if (!_writeContext.inArray()) {
+            _reportError("Current context not Array but " + _writeContext.typeDesc());
+        }
+        _writeContext = _writeContext.clearAndGetParent();
+        containers.pop();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        _verifyValueWrite("start an object");
+        Map<String, Object> map = new LinkedHashMap<>();
+        addValue(map);
+        containers.push(map);
+        _writeContext = _writeContext.createChildObjectContext();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        if (!_writeContext.inObject()) {
+            _reportError("Current context not Object but " + _writeContext.typeDesc());
+        }
+        _writeContext = _writeContext.clearAndGetParent();
+        containers.pop();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException {
+        if (_writeContext.writeFieldName(name) == JsonWriteContext.STATUS_EXPECT_VALUE) {
+            _reportError("Can not write a field name, expecting a value");
+        }
+    }
+
+    @Override
+    public void writeFieldName(SerializableString name) throws IOException {
+        writeFieldName(name.getValue());
+    }
+
+    @Override
+    public void writeString(String text) throws IOException {
+        if (text == null) {
+            writeNull();
+        } else {
+            writeValue(text);
+        }
+    }
+
+    @Override
+    public void writeString(char[] buffer, int offset, int len) throws IOException {
+        writeString(new String(buffer, offset, len));
+    }
+
+    @Override
+    public void writeString(SerializableString text) throws IOException {
+        if (text == null) {
+            writeNull();
+        } else {
+            writeValue(text.getValue());
+        }
+    }
+
+    @Override
+    public void writeString(Reader reader, int len) throws IOException {
+        if (reader == null) {
+            _reportError("null reader");
+            return;
+        }
+        int toRead = (len >= 0) ? len : Integer.MAX_VALUE;
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[1000];
+        while (toRead > 0) {
+            int read = reader.read(buffer, 0, Math.min(toRead, buffer.length));
+            if (read <= 0) {
+                break;
+            }
+            text.append(buffer, 0, read);
+            toRead -= read;
+        }
+        if (toRead > 0 && len >= 0) {
+            _reportError("Was not able to write out " + len + " characters, got " + text.length());
+        }
+        writeString(text.toString());
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] buffer, int offset, int len) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeUTF8String(byte[] buffer, int offset, int len) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(String text) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(String text, int offset, int len) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(SerializableString text) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(char[] text, int offset, int len) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRaw(char c) throws IOException {
+        _reportUnsupportedOperation();
+    }
+
+    @Override
+    public void writeRawValue(String text) throws IOException {
+        writeValue(new RawValue(text));
+    }
+
+    @Override
+    public void writeRawValue(String text, int offset, int len) throws IOException {
+        if (offset > 0 || len != text.length()) {
+            text = text.substring(offset, offset + len);
+        }
+        writeValue(new RawValue(text));
+    }
+
+    @Override
+    public void writeRawValue(char[] text, int offset, int len) throws IOException {
+        writeValue(new RawValue(new String(text, offset, len)));
+    }
+
+    @Override
+    public void writeBinary(Base64Variant variant, byte[] data, int offset, int len) throws IOException {
+        writeValue(Arrays.copyOfRange(data, offset, offset + len));
+    }
+
+    @Override
+    public int writeBinary(Base64Variant variant, InputStream data, int dataLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4000];
+        int toRead = (dataLength >= 0) ? dataLength : Integer.MAX_VALUE;
+        while (toRead > 0) {
+            int read = data.read(buffer, 0, Math.min(toRead, buffer.length));
+            if (read <= 0) {
+                break;
+            }
+            bytes.write(buffer, 0, read);
+            toRead -= read;
+        }
+        if (toRead > 0 && dataLength >= 0) {
+            _reportError("Too few bytes available: missing " + toRead + " bytes (out of " + dataLength + ")");
+        }
+        writeValue(bytes.toByteArray());
+        return bytes.size();
+    }
+
+    @Override
+    public void writeNumber(short value) throws IOException {
+        writeValue(value);
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException {
+        writeValue(value);
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException {
+        writeValue(value);
+    }
+
+    @Override
+    public void writeNumber(BigInteger value) throws IOException {
+        if (value == null) {
+            writeNull();
+        } else {
+            writeValue(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException {
+        writeValue(value);
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException {
+        writeValue(value);
+    }
+
+    @Override
+    public void writeNumber(BigDecimal value) throws IOException {
+        if (value == null) {
+            writeNull();
+        } else {
+            writeValue(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(String encodedValue) throws IOException {
+        if (encodedValue == null) {
+            writeNull();
+        } else if (_objectCodec == null) {
+            writeValue(encodedValue);
+        } else {
+            // rarely used, so simply convert like the untyped deserialization of a buffered number does
+            TokenBuffer buffer = new TokenBuffer(_objectCodec, false);
+            buffer.writeNumber(encodedValue);
+            try (JsonParser parser = buffer.asParser()) {
+                writeValue(_objectCodec.readValue(parser, Object.class));
+            }
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException {
+        writeValue(state);
+    }
+
+    @Override
+    public void writeNull() throws IOException {
+        writeValue(null);
+    }
+
+    @Override
+    public void writeEmbeddedObject(Object object) throws IOException {
+        writeValue(object);
+    }
+
+    @Override
+    public void writeObject(Object value) throws IOException {
+        if (value == null) {
+            writeNull();
+        } else if (value.getClass() == byte[].class || value instanceof RawValue || _objectCodec == null) {
+            writeValue(value);
+        } else {
+            _objectCodec.writeValue(this, value);
+        }
+    }
+
+    @Override
+    public void writeTree(TreeNode node) throws IOException {
+        if (node == null) {
+            writeNull();
+        } else if (_objectCodec == null) {
+            writeValue(node);
+        } else {
+            _objectCodec.writeTree(this, node);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    @Override
+    protected void _releaseBuffers() {
+        // no buffers used
+    }
+
+    @Override
+    protected void _verifyValueWrite(String typeMsg) throws IOException {
+        if (_writeContext.writeValue() == JsonWriteContext.STATUS_EXPECT_NAME) {
+            _reportError("Can not " + typeMsg + ", expecting field name");
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        _verifyValueWrite("write a value");
+        addValue(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addValue(Object value) {
+        Object container = containers.peek();
+        if (container == null) {
+            rootValue = value;
+        } else if (container instanceof List) {
+            ((List<Object>) container).add(value);
+        } else {
+            ((Map<String, Object>) container).put(_writeContext.getCurrentName(), value);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.EnumSet;
+import java.util.Objects;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable, precompiled form of the mapping options of an export. Features which are not mentioned in the options
+ * are neither contained in the enabled nor in the disabled set and keep the Jackson defaults.
+ */
+final class MappingOptions {
+
+    static final MappingOptions EMPTY = new MappingOptions(
+            EnumSet.noneOf(MapperFeature.class),
+            EnumSet.noneOf(MapperFeature.class),
+            EnumSet.noneOf(SerializationFeature.class),
+            EnumSet.noneOf(SerializationFeature.class),
+            null);
+
+    private final EnumSet<MapperFeature> enabledMapperFeatures;
+
+    private final EnumSet<MapperFeature> disabledMapperFeatures;
+
+    private final EnumSet<SerializationFeature> enabledSerializationFeatures;
+
+    private final EnumSet<SerializationFeature> disabledSerializationFeatures;
+
+    private final Boolean tidy;
+
+    private final int hashCode;
+
+    MappingOptions(
+            @NotNull EnumSet<MapperFeature> enabledMapperFeatures,
+            @NotNull EnumSet<MapperFeature> disabledMapperFeatures,
+            @NotNull EnumSet<SerializationFeature> enabledSerializationFeatures,
+            @NotNull EnumSet<SerializationFeature> disabledSerializationFeatures,
+            @Nullable Boolean tidy) {
+        this.enabledMapperFeatures = EnumSet.copyOf(enabledMapperFeatures);
+        this.disabledMapperFeatures = EnumSet.copyOf(disabledMapperFeatures);
+        this.enabledSerializationFeatures = EnumSet.copyOf(enabledSerializationFeatures);
+        this.disabledSerializationFeatures = EnumSet.copyOf(disabledSerializationFeatures);
+        this.tidy = tidy;
+        this.hashCode = Objects.hash(
+                enabledMapperFeatures,
+                disabledMapperFeatures,
+                enabledSerializationFeatures,
+                disabledSerializationFeatures,
+                tidy);
+    }
+
+    /**
+     * Returns new options where all features and the tidy flag set in the given overrides take precedence over the
+     * ones of this instance.
+     */
+    @NotNull
+    MappingOptions withOverrides(@NotNull MappingOptions overrides) {
+        if (overrides.equals(EMPTY)) {
+            return this;
+        }
+        EnumSet<MapperFeature> enabledMapper = EnumSet.copyOf(enabledMapperFeatures);
+        enabledMapper.removeAll(overrides.disabledMapperFeatures);
+        enabledMapper.addAll(overrides.enabledMapperFeatures);
+        EnumSet<MapperFeature> disabledMapper = EnumSet.copyOf(disabledMapperFeatures);
+        disabledMapper.removeAll(overrides.enabledMapperFeatures);
+        disabledMapper.addAll(overrides.disabledMapperFeatures);
+        EnumSet<SerializationFeature> enabledSerialization = EnumSet.copyOf(enabledSerializationFeatures);
+        enabledSerialization.removeAll(overrides.disabledSerializationFeatures);
+        enabledSerialization.addAll(overrides.enabledSerializationFeatures);
+        EnumSet<SerializationFeature> disabledSerialization = EnumSet.copyOf(disabledSerializationFeatures);
+        disabledSerialization.removeAll(overrides.enabledSerializationFeatures);
+        disabledSerialization.addAll(overrides.disabledSerializationFeatures);
+        return new MappingOptions(
+                enabledMapper,
+                disabledMapper,
+                enabledSerialization,
+                disabledSerialization,
+                overrides.tidy != null ? overrides.tidy : tidy);
+    }
+
+    /**
+     * Returns options only containing the mapper features of this instance, which identify the {@link ObjectMapper}
+     * required for them.
+     */
+    @NotNull
+    MappingOptions getMapperOptions() {
+        if (enabledSerializationFeatures.isEmpty() && disabledSerializationFeatures.isEmpty() && tidy == null) {
+            return this;
+        }
+        return new MappingOptions(
+                enabledMapperFeatures,
+                disabledMapperFeatures,
+                EnumSet.noneOf(SerializationFeature.class),
+                EnumSet.noneOf(SerializationFeature.class),
+                null);
+    }
+
+    boolean isTidy() {
+        return tidy != null && tidy;
+    }
+
+    void configure(@NotNull ObjectMapper mapper) {
+        for (MapperFeature feature : enabledMapperFeatures) {
+            mapper.configure(feature, true);
+        }
+        for (MapperFeature feature : disabledMapperFeatures) {
+            mapper.configure(feature, false);
+        }
+    }
+
+    @NotNull
+    ObjectWriter configure(@NotNull ObjectWriter writer) {
+        ObjectWriter result = writer;
+        for (SerializationFeature feature : enabledSerializationFeatures) {
+            result = result.with(feature);
+        }
+        for (SerializationFeature feature : disabledSerializationFeatures) {
+            result = result.without(feature);
+        }
+        if (isTidy()) {
+            result = result.withDefaultPrettyPrinter();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MappingOptions)) {
+            return false;
+        }
+        MappingOptions other = (MappingOptions) obj;
+        return hashCode == other.hashCode
+                && enabledMapperFeatures.equals(other.enabledMapperFeatures)
+                && disabledMapperFeatures.equals(other.disabledMapperFeatures)
+                && enabledSerializationFeatures.equals(other.enabledSerializationFeatures)
+                && disabledSerializationFeatures.equals(other.disabledSerializationFeatures)
+                && Objects.equals(tidy, other.tidy);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "MappingOptions [enabledMapperFeatures=" + enabledMapperFeatures + ", disabledMapperFeatures="
+                + disabledMapperFeatures + ", enabledSerializationFeatures=" + enabledSerializationFeatures
+                + ", disabledSerializationFeatures=" + disabledSerializationFeatures + ", tidy=" + tidy + "]";
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the option maps passed to an export into {@link MappingOptions}, with the configured mapping options as
+ * base. The configured options are parsed once, per-export options are parsed once per distinct combination of the
+ * mapping options among them, other options do not affect the mapping.
+ */
+final class MappingOptionsResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(JacksonExporter.class);
+
+    static final String SERIALIZATION_FEATURE_PREFIX = SerializationFeature.class.getSimpleName() + ".";
+
+    static final String MAPPER_FEATURE_PREFIX = MapperFeature.class.getSimpleName() + ".";
+
+    static final String TIDY = "tidy";
+
+    private static final int SERIALIZATION_FEATURE_PREFIX_LENGTH = SERIALIZATION_FEATURE_PREFIX.length();
+
+    private static final int MAPPER_FEATURE_PREFIX_LENGTH = MAPPER_FEATURE_PREFIX.length();
+
+    /** the names of all options affecting the mapping */
+    private static final Set<String> OPTION_NAMES = new HashSet<>();
+
+    static {
+        for (SerializationFeature feature : SerializationFeature.values()) {
+            OPTION_NAMES.add(SERIALIZATION_FEATURE_PREFIX + feature.name());
+        }
+        for (MapperFeature feature : MapperFeature.values()) {
+            OPTION_NAMES.add(MAPPER_FEATURE_PREFIX + feature.name());
+        }
+        OPTION_NAMES.add(TIDY);
+    }
+
+    /**
+     * Options may be passed in via request parameters, so the number of resolved mapping options and of reported bad
+     * option names which are kept has to be bounded.
+     */
+    static final int MAX_CACHED_OPTIONS = 128;
+
+    static final int MAX_REPORTED_BAD_OPTIONS = 128;
+
+    private final MappingOptions configuredOptions;
+
+    private final ConcurrentMap<Map<String, Boolean>, MappingOptions> resolvedOptions = new ConcurrentHashMap<>();
+
+    private final Set<String> reportedBadOptions = ConcurrentHashMap.newKeySet();
+
+    MappingOptionsResolver(@NotNull Map<String, String> configuredOptions) {
+        this.configuredOptions = parse(configuredOptions);
+    }
+
+    @NotNull
+    MappingOptions getConfiguredOptions() {
+        return configuredOptions;
+    }
+
+    /**
+     * Returns the effective mapping options for the given export options, which take precedence over the configured
+     * ones.
+     *
+     * @param options the options passed to the export
+     * @return the effective mapping options
+     */
+    @NotNull
+    MappingOptions resolve(@NotNull Map<String, String> options) {
+        if (options.isEmpty()) {
+            return configuredOptions;
+        }
+        Map<String, Boolean> mappingOptions = getMappingOptions(options);
+        if (mappingOptions.isEmpty()) {
+            return configuredOptions;
+        }
+        MappingOptions resolved = resolvedOptions.get(mappingOptions);
+        if (resolved == null) {
+            resolved = configuredOptions.withOverrides(parse(mappingOptions));
+            if (resolvedOptions.size() < MAX_CACHED_OPTIONS) {
+                resolvedOptions.putIfAbsent(mappingOptions, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Returns the options among the given ones which affect the mapping, with their values parsed, and reports bad
+     * feature options.
+     */
+    private Map<String, Boolean> getMappingOptions(Map<String, String> options) {
+        Map<String, Boolean> mappingOptions = null;
+        for (Map.Entry<String, String> optionEntry : options.entrySet()) {
+            String key = optionEntry.getKey();
+            if (OPTION_NAMES.contains(key)) {
+                if (mappingOptions == null) {
+                    mappingOptions = new HashMap<>();
+                }
+                mappingOptions.put(key, Boolean.parseBoolean(optionEntry.getValue()));
+            } else if (key.startsWith(SERIALIZATION_FEATURE_PREFIX)) {
+                reportBadOption(
+                        key, "Bad SerializationFeature option: {}", key.substring(SERIALIZATION_FEATURE_PREFIX_LENGTH));
+            } else if (key.startsWith(MAPPER_FEATURE_PREFIX)) {
+                reportBadOption(key, "Bad MapperFeature option: {}", key.substring(MAPPER_FEATURE_PREFIX_LENGTH));
+            }
+        }
+        return mappingOptions != null ? mappingOptions : Collections.emptyMap();
+    }
+
+    private MappingOptions parse(Map<String, ?> options) {
+        EnumSet<MapperFeature> enabledMapperFeatures = EnumSet.noneOf(MapperFeature.class);
+        EnumSet<MapperFeature> disabledMapperFeatures = EnumSet.noneOf(MapperFeature.class);
+        EnumSet<SerializationFeature> enabledSerializationFeatures = EnumSet.noneOf(SerializationFeature.class);
+        EnumSet<SerializationFeature> disabledSerializationFeatures = EnumSet.noneOf(SerializationFeature.class);
+        Boolean tidy = null;
+        for (Map.Entry<String, ?> optionEntry : options.entrySet()) {
+            String key = optionEntry.getKey();
+            boolean enabled = Boolean.parseBoolean(String.valueOf(optionEntry.getValue()));
+            if (key.startsWith(SERIALIZATION_FEATURE_PREFIX)) {
+                String enumName = key.substring(SERIALIZATION_FEATURE_PREFIX_LENGTH);
+                try {
+                    SerializationFeature feature = SerializationFeature.valueOf(enumName);
+                    (enabled ? enabledSerializationFeatures : disabledSerializationFeatures).add(feature);
+                } catch (IllegalArgumentException e) {
+                    reportBadOption(key, "Bad SerializationFeature option: {}", enumName);
+                }
+            } else if (key.startsWith(MAPPER_FEATURE_PREFIX)) {
+                String enumName = key.substring(MAPPER_FEATURE_PREFIX_LENGTH);
+                try {
+                    MapperFeature feature = MapperFeature.valueOf(enumName);
+                    (enabled ? enabledMapperFeatures : disabledMapperFeatures).add(feature);
+                } catch (IllegalArgumentException e) {
+                    reportBadOption(key, "Bad MapperFeature option: {}", enumName);
+                }
+            } else if (key.equals(TIDY)) {
+                tidy = enabled;
+            }
+        }
+        return new MappingOptions(
+                enabledMapperFeatures,
+                disabledMapperFeatures,
+                enabledSerializationFeatures,
+                disabledSerializationFeatures,
+                tidy);
+    }
+
+    private void reportBadOption(String key, String message, String enumName) {
+        if (reportedBadOptions.size() < MAX_REPORTED_BAD_OPTIONS && reportedBadOptions.add(key)) {
+            log.warn(message, enumName);
+        } else {
+            log.debug(message, enumName);
+        }
+    }
+}
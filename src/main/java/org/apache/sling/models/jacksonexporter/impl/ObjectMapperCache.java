@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the fully configured {@link ObjectMapper} and {@link ObjectWriter} instances for one generation of bound
+ * {@link ModuleProvider}s. Instances are immutable with regards to the module providers: whenever a provider is bound
+ * or unbound a new cache with the next generation number is created, so a mapper is never built from a half-updated
+ * collection.
+ */
+final class ObjectMapperCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ObjectMapperCache.class);
+
+    /**
+     * Options may be passed in via request parameters, so the number of cached mappers and writers has to be
+     * bounded.
+     */
+    static final int MAX_CACHED_MAPPERS = 16;
+
+    static final int MAX_CACHED_WRITERS = 64;
+
+    private final long generation;
+
+    private final List<ModuleProvider> moduleProviders;
+
+    private final ConcurrentMap<MappingOptions, ObjectMapper> mappers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<MappingOptions, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /** writers derived for exports, by mapping options and serializer options */
+    private final ConcurrentMap<List<Object>, ExportWriters> exportWriters = new ConcurrentHashMap<>();
+
+    ObjectMapperCache(long generation, @NotNull List<ModuleProvider> moduleProviders) {
+        this.generation = generation;
+        this.moduleProviders = Collections.unmodifiableList(moduleProviders);
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    @NotNull
+    List<ModuleProvider> getModuleProviders() {
+        return moduleProviders;
+    }
+
+    /**
+     * Returns a mapper configured with the {@link MapperFeature} options contained in the given options and with the
+     * modules of all module providers of this generation registered. Only mapper features require a distinct
+     * mapper, all other options are applied on the writers returned by {@link #getWriter(MappingOptions)}.
+     *
+     * @param options the effective mapping options
+     * @return the mapper, which must not be reconfigured by the caller
+     */
+    @NotNull
+    ObjectMapper getMapper(@NotNull MappingOptions options) {
+        MappingOptions mapperOptions = options.getMapperOptions();
+        ObjectMapper mapper = mappers.get(mapperOptions);
+        if (mapper == null) {
+            if (mappers.size() >= MAX_CACHED_MAPPERS) {
+                log.debug(
+                        "Mapper cache of generation {} is full, not caching mapper for {}", generation, mapperOptions);
+                return createMapper(mapperOptions);
+            }
+            mapper = mappers.computeIfAbsent(mapperOptions, this::createMapper);
+        }
+        return mapper;
+    }
+
+    /**
+     * Returns a writer for the given options. Writers are derived from the mapper returned by
+     * {@link #getMapper(MappingOptions)} with the {@link SerializationFeature} options and the {@code tidy} option
+     * applied, so all writers of one mapper share its serializer and bean introspection caches.
+     *
+     * @param options the effective mapping options
+     * @return the writer
+     */
+    @NotNull
+    ObjectWriter getWriter(@NotNull MappingOptions options) {
+        ObjectWriter writer = writers.get(options);
+        if (writer == null) {
+            if (writers.size() >= MAX_CACHED_WRITERS) {
+                log.debug("Writer cache of generation {} is full, not caching writer for {}", generation, options);
+                return createWriter(options);
+            }
+            writer = writers.computeIfAbsent(options, this::createWriter);
+        }
+        return writer;
+    }
+
+    /**
+     * Returns a writer for the given options like {@link #getWriter(MappingOptions)}, with the export options starting
+     * with {@link JacksonExporter#SERIALIZER_OPTIONS_PREFIX} set as the {@link JacksonExporter#EXPORT_OPTIONS_ATTRIBUTE}
+     * attribute for the serializers. The derived writers are cached per mapping options and serializer options, so
+     * other export options do not cause new writers.
+     *
+     * @param options the effective mapping options
+     * @param exportOptions the options passed to the export
+     * @param unwrapped whether the root value must not be wrapped regardless of the options
+     * @return the writer
+     */
+    @NotNull
+    ObjectWriter getWriter(
+            @NotNull MappingOptions options, @NotNull Map<String, String> exportOptions, boolean unwrapped) {
+        Map<String, String> serializerOptions = getSerializerOptions(exportOptions);
+        List<Object> key = Arrays.asList(options, serializerOptions);
+        ExportWriters writers = exportWriters.get(key);
+        if (writers == null) {
+            writers = new ExportWriters(getWriter(options), serializerOptions);
+            if (exportWriters.size() < MAX_CACHED_WRITERS) {
+                exportWriters.putIfAbsent(key, writers);
+            } else {
+                log.debug("Export writer cache of generation {} is full, not caching writer for {}", generation, key);
+            }
+        }
+        return unwrapped ? writers.unwrapped : writers.writer;
+    }
+
+    /** Returns the export options which are passed to the serializers */
+    private static Map<String, String> getSerializerOptions(Map<String, String> exportOptions) {
+        Map<String, String> serializerOptions = null;
+        for (Map.Entry<String, String> option : exportOptions.entrySet()) {
+            if (option.getKey().startsWith(JacksonExporter.SERIALIZER_OPTIONS_PREFIX)) {
+                if (serializerOptions == null) {
+                    serializerOptions = new HashMap<>();
+                }
+                serializerOptions.put(option.getKey(), option.getValue());
+            }
+        }
+        return serializerOptions != null ? Collections.unmodifiableMap(serializerOptions) : Collections.emptyMap();
+    }
+
+    private ObjectMapper createMapper(MappingOptions mapperOptions) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapperOptions.configure(mapper);
+        for (ModuleProvider moduleProvider : moduleProviders) {
+            mapper.registerModule(moduleProvider.getModule());
+        }
+        return mapper;
+    }
+
+    private ObjectWriter createWriter(MappingOptions options) {
+        ObjectMapper mapper = getMapper(options);
+        return options.configure(mapper.writer()
+                .withAttribute(JacksonExporter.SERIALIZER_FACTORY_ATTRIBUTE, mapper.getSerializerFactory()));
+    }
+
+    /** The writers derived for the options of an export */
+    private static final class ExportWriters {
+
+        private final ObjectWriter writer;
+
+        private final ObjectWriter unwrapped;
+
+        ExportWriters(ObjectWriter base, Map<String, String> serializerOptions) {
+            this.writer = serializerOptions.isEmpty()
+                    ? base
+                    : base.withAttribute(JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE, serializerOptions);
+            this.unwrapped = writer.without(SerializationFeature.WRAP_ROOT_VALUE);
+        }
+    }
+}
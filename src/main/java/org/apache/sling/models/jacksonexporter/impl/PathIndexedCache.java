@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Store of the {@link ExportOutputCache} and the {@link ResourceFragmentCache}, bounded by the estimated size of the
+ * cached values and evicting the least recently used ones first. Entries are indexed by a resource path and
+ * invalidated whenever that resource, one of its descendants or one of its ancestors changes.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class PathIndexedCache<K, V> {
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Entries in access order, guarded by the lock on this map.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Keys of the entries by path, guarded by the lock on {@link #entries}.
+     */
+    private final TreeMap<String, Set<K>> keysByPath = new TreeMap<>();
+
+    private final long maxSize;
+
+    private long size;
+
+    private long epoch;
+
+    PathIndexedCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the number of invalidations so far, which has to be passed to
+     * {@link #put(Object, String, Object, long, long)} to make sure that no value created before an invalidation is
+     * cached afterwards.
+     */
+    long getEpoch() {
+        synchronized (entries) {
+            return epoch;
+        }
+    }
+
+    /**
+     * Returns the cached value for the given key.
+     *
+     * @param key the key
+     * @return the cached value, or {@code null}
+     */
+    @Nullable
+    V get(@NotNull K key) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Caches the given value, unless a resource changed since the given epoch.
+     *
+     * @param key the key
+     * @param path the path the entry is invalidated for
+     * @param value the value
+     * @param entrySize the estimated size of the entry in bytes
+     * @param epochBeforeCreation the value of {@link #getEpoch()} before the value was created
+     */
+    void put(@NotNull K key, @NotNull String path, @NotNull V value, long entrySize, long epochBeforeCreation) {
+        synchronized (entries) {
+            if (epoch != epochBeforeCreation) {
+                return;
+            }
+            Entry<V> previous = entries.put(key, new Entry<>(path, value, entrySize));
+            if (previous != null) {
+                size -= previous.size;
+            } else {
+                keysByPath.computeIfAbsent(path, p -> new HashSet<>()).add(key);
+            }
+            size += entrySize;
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                Map.Entry<K, Entry<V>> evicted = eldest.next();
+                eldest.remove();
+                unindex(evicted.getKey(), evicted.getValue().path);
+                size -= evicted.getValue().size;
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Invalidates the entries affected by the given changes.
+     */
+    void onChange(@NotNull List<ResourceChange> changes) {
+        synchronized (entries) {
+            epoch++;
+            for (ResourceChange change : changes) {
+                invalidate(change.getPath());
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of the given path, of all descendants and of all ancestors. Must be called while holding
+     * the lock on {@link #entries}.
+     */
+    private void invalidate(String path) {
+        removeAll(keysByPath.remove(path));
+        String prefix = path.endsWith("/") ? path : path + "/";
+        Iterator<Map.Entry<String, Set<K>>> descendants =
+                keysByPath.tailMap(prefix, true).entrySet().iterator();
+        while (descendants.hasNext()) {
+            Map.Entry<String, Set<K>> descendant = descendants.next();
+            if (!descendant.getKey().startsWith(prefix)) {
+                break;
+            }
+            descendants.remove();
+            removeAll(descendant.getValue());
+        }
+        for (int index = path.lastIndexOf('/'); index >= 0; index = path.lastIndexOf('/', index - 1)) {
+            removeAll(keysByPath.remove(index == 0 ? "/" : path.substring(0, index)));
+            if (index == 0) {
+                break;
+            }
+        }
+    }
+
+    private void removeAll(Set<K> keys) {
+        if (keys == null) {
+            return;
+        }
+        for (K key : keys) {
+            Entry<V> entry = entries.remove(key);
+            if (entry != null) {
+                size -= entry.size;
+                invalidations.increment();
+            }
+        }
+    }
+
+    private void unindex(K key, String path) {
+        Set<K> keys = keysByPath.get(path);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByPath.remove(path);
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    long getMaxSize() {
+        return maxSize;
+    }
+
+    void clear() {
+        synchronized (entries) {
+            epoch++;
+            entries.clear();
+            keysByPath.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * @return true if the given path is one of the given paths or located below one of them
+     */
+    static boolean isBelow(@NotNull String path, @NotNull String[] paths) {
+        for (String parent : paths) {
+            if (path.equals(parent) || path.startsWith(parent.endsWith("/") ? parent : parent + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry<V> {
+
+        private final String path;
+
+        private final V value;
+
+        private final long size;
+
+        Entry(String path, V value, long size) {
+            this.path = path;
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decides which properties of a resource are exported, based on glob patterns in which {@code *} matches any sequence
+ * of characters. A property is exported if its name matches one of the include patterns, or if there are none, and
+ * matches none of the exclude patterns. A filter may have a parent filter, which has to accept the property as well.
+ * <p>
+ * The patterns are compiled once into a set of names, a list of prefixes and a regular expression for all other
+ * patterns, and the decisions for recurring names are cached. Filters with the same patterns and parent are equal.
+ */
+final class PropertyFilter {
+
+    /** Filter accepting all properties */
+    static final PropertyFilter ACCEPT_ALL = new PropertyFilter(null, null, null);
+
+    /**
+     * Property names are taken from content, so the number of cached decisions has to be bounded.
+     */
+    static final int MAX_CACHED_NAMES = 4096;
+
+    private final NamePatterns includes;
+
+    private final NamePatterns excludes;
+
+    private final PropertyFilter parent;
+
+    private final ConcurrentMap<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    private final int hashCode;
+
+    private PropertyFilter(NamePatterns includes, NamePatterns excludes, PropertyFilter parent) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.parent = parent;
+        this.hashCode = Objects.hash(includes, excludes, parent);
+    }
+
+    /**
+     * Creates a filter for the given patterns. Empty patterns are ignored.
+     *
+     * @param includes the include patterns, or {@code null}
+     * @param excludes the exclude patterns, or {@code null}
+     * @param parent filter which has to accept the properties as well, or {@code null}
+     * @return the filter
+     */
+    @NotNull
+    static PropertyFilter create(
+            @Nullable String[] includes, @Nullable String[] excludes, @Nullable PropertyFilter parent) {
+        NamePatterns includePatterns = NamePatterns.compile(includes);
+        NamePatterns excludePatterns = NamePatterns.compile(excludes);
+        if (includePatterns == null && excludePatterns == null) {
+            return parent != null ? parent : ACCEPT_ALL;
+        }
+        return new PropertyFilter(
+                includePatterns, excludePatterns, parent != null && !parent.isAcceptAll() ? parent : null);
+    }
+
+    /**
+     * @return true if the filter accepts all properties
+     */
+    boolean isAcceptAll() {
+        return this == ACCEPT_ALL;
+    }
+
+    /**
+     * @param name the property name
+     * @return true if the property is exported
+     */
+    boolean accept(@NotNull String name) {
+        if (isAcceptAll()) {
+            return true;
+        }
+        Boolean decision = decisions.get(name);
+        if (decision == null) {
+            decision = (includes == null || includes.matches(name))
+                    && (excludes == null || !excludes.matches(name))
+                    && (parent == null || parent.accept(name));
+            if (decisions.size() < MAX_CACHED_NAMES) {
+                decisions.putIfAbsent(name, decision);
+            }
+        }
+        return decision;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PropertyFilter)) {
+            return false;
+        }
+        PropertyFilter other = (PropertyFilter) obj;
+        return hashCode == other.hashCode
+                && Objects.equals(includes, other.includes)
+                && Objects.equals(excludes, other.excludes)
+                && Objects.equals(parent, other.parent);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    private static final class NamePatterns {
+
+        private final Set<String> names;
+
+        private final String[] prefixes;
+
+        private final Pattern pattern;
+
+        private NamePatterns(Set<String> names, String[] prefixes, Pattern pattern) {
+            this.names = names;
+            this.prefixes = prefixes;
+            this.pattern = pattern;
+        }
+
+        static NamePatterns compile(String[] globs) {
+            if (globs == null) {
+                return null;
+            }
+            Set<String> names = new HashSet<>();
+            List<String> prefixes = new ArrayList<>();
+            StringBuilder regex = new StringBuilder();
+            for (String glob : globs) {
+                String trimmed = glob != null ? glob.trim() : "";
+                int wildcard = trimmed.indexOf('*');
+                if (trimmed.isEmpty()) {
+                    continue;
+                } else if (wildcard < 0) {
+                    names.add(trimmed);
+                } else if (wildcard == trimmed.length() - 1) {
+                    prefixes.add(trimmed.substring(0, wildcard));
+                } else {
+                    if (regex.length() > 0) {
+                        regex.append('|');
+                    }
+                    for (String part : trimmed.split("\\*", -1)) {
+                        regex.append(Pattern.quote(part)).append(".*");
+                    }
+                    // no wildcard after the last part
+                    regex.setLength(regex.length() - 2);
+                }
+            }
+            if (names.isEmpty() && prefixes.isEmpty() && regex.length() == 0) {
+                return null;
+            }
+            return new NamePatterns(
+                    names,
+                    prefixes.toArray(new String[0]),
+                    regex.length() > 0 ? Pattern.compile(regex.toString(), Pattern.DOTALL) : null);
+        }
+
+        boolean matches(String name) {
+            if (names.contains(name)) {
+                return true;
+            }
+            for (String prefix : prefixes) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return pattern != null && pattern.matcher(name).matches();
+        }
+
+        private String regex() {
+            return pattern != null ? pattern.pattern() : null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NamePatterns)) {
+                return false;
+            }
+            NamePatterns other = (NamePatterns) obj;
+            return names.equals(other.names)
+                    && Arrays.equals(prefixes, other.prefixes)
+                    && Objects.equals(regex(), other.regex());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(names, Arrays.hashCode(prefixes), regex());
+        }
+    }
+}
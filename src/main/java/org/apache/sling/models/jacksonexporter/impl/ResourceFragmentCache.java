@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteConstraints;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache for the JSON text of resource subtrees serialized by the {@link ResourceSerializer}, so that subtrees shared
+ * by many exports are spliced into the output instead of being read and serialized again. The entries are held in a
+ * {@link PathIndexedCache} like the ones of the {@link ExportOutputCache}, and invalidated whenever the resource, one
+ * of its descendants or one of its ancestors changes.
+ * <p>
+ * The cache is only active if a configuration exists.
+ */
+@Component(
+        service = {ResourceFragmentCache.class, ResourceChangeListener.class, ResourceFragmentCacheMBean.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"jmx.objectname=org.apache.sling.models.jacksonexporter:type=ResourceFragmentCache"})
+@Designate(ocd = ResourceFragmentCache.Config.class)
+public class ResourceFragmentCache
+        implements ResourceChangeListener, ExternalResourceChangeListener, ResourceFragmentCacheMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceFragmentCache.class);
+
+    /**
+     * Estimated memory used by an entry in addition to its key strings and its value.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Models Jackson Exporter - Resource Fragment Cache",
+            description = "Caches the JSON of serialized resource subtrees until they change.")
+    static @interface Config {
+
+        @AttributeDefinition(
+                name = "Maximum Size",
+                description = "Maximum estimated size of all cached fragments in bytes.")
+        long max_size() default 16L * 1024 * 1024;
+
+        @AttributeDefinition(
+                name = "Maximum Entry Size",
+                description = "Maximum estimated size of a single cached fragment in bytes. Larger fragments are not "
+                        + "cached.")
+        long max_entry_size() default 256L * 1024;
+
+        @AttributeDefinition(
+                name = "Observed Paths",
+                description = "Only subtrees of resources located below one of these paths are cached, as changes "
+                        + "are only observed for them. The outermost resource below these paths which is serialized "
+                        + "by an export is cached with its subtree.")
+        String[] resource_paths() default {"/"};
+    }
+
+    /**
+     * Creates the generators capturing the fragments, with the escapes of the exporter's generators. Fragments are not
+     * used by exports with a maximum nesting depth, so like the exporter's generators of the other exports these do
+     * not constrain the depth.
+     */
+    private final JsonFactory jsonFactory = new JsonFactoryBuilder()
+            .characterEscapes(JacksonExporter.ESCAPES)
+            .streamWriteConstraints(StreamWriteConstraints.builder()
+                    .maxNestingDepth(Integer.MAX_VALUE)
+                    .build())
+            .build();
+
+    private PathIndexedCache<Key, String> cache;
+
+    private long maxEntrySize;
+
+    private String[] observedPaths;
+
+    @Activate
+    private void activate(Config config) {
+        long maxSize = config.max_size();
+        this.cache = new PathIndexedCache<>(maxSize);
+        this.maxEntrySize = Math.min(config.max_entry_size(), maxSize);
+        this.observedPaths = config.resource_paths();
+    }
+
+    @Deactivate
+    private void deactivate() {
+        clear();
+    }
+
+    /**
+     * Returns the cache key for the subtree of the given resource.
+     *
+     * @param resource the root resource of the subtree
+     * @param recursionLevels the number of levels of child resources serialized, or -1 for all
+     * @param childLimit the maximum number of children serialized for each resource, or -1 for all
+     * @param propertyFilter the filter of the serialized properties
+     * @param generatorFeatures the features of the generator the fragment is written to
+     * @param utf8 whether the generator the fragment is written to encodes UTF-8 rather than writing characters
+     * @param serializationFeatures the serialization features of the export
+     * @param serializer the serializer
+     * @return the key, or {@code null} if the subtree cannot be cached
+     */
+    @Nullable
+    Key getKey(
+            @NotNull Resource resource,
+            int recursionLevels,
+            int childLimit,
+            @NotNull PropertyFilter propertyFilter,
+            int generatorFeatures,
+            boolean utf8,
+            int serializationFeatures,
+            @NotNull ResourceSerializer serializer) {
+        String path = resource.getPath();
+        if (path == null || !PathIndexedCache.isBelow(path, observedPaths)) {
+            return null;
+        }
+        ResourceResolver resolver = resource.getResourceResolver();
+        return new Key(
+                path,
+                resolver != null ? resolver.getUserID() : null,
+                recursionLevels,
+                childLimit,
+                propertyFilter,
+                generatorFeatures,
+                utf8,
+                serializationFeatures,
+                serializer);
+    }
+
+    /**
+     * Returns the number of invalidations so far, which has to be passed to {@link #put(Key, String, long)} to make
+     * sure that no fragment serialized before an invalidation is cached afterwards.
+     */
+    long getEpoch() {
+        return cache.getEpoch();
+    }
+
+    /**
+     * @param key the key
+     * @return the cached fragment, or {@code null}
+     */
+    @Nullable
+    String get(@NotNull Key key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Caches the given fragment, unless it is too large or a resource changed since the given epoch.
+     *
+     * @param key the key
+     * @param fragment the JSON text of the subtree
+     * @param epochBeforeSerialization the value of {@link #getEpoch()} before the fragment was serialized
+     */
+    void put(@NotNull Key key, @NotNull String fragment, long epochBeforeSerialization) {
+        long entrySize = key.size + 2L * fragment.length();
+        if (entrySize > maxEntrySize) {
+            log.debug("Not caching fragment of {} with estimated size {}", key.path, entrySize);
+            return;
+        }
+        cache.put(key, key.path, fragment, entrySize, epochBeforeSerialization);
+    }
+
+    /**
+     * Creates a generator capturing a fragment, with the given features of the generator the fragment is written to.
+     */
+    @NotNull
+    JsonGenerator createGenerator(@NotNull Writer writer, int generatorFeatures) throws IOException {
+        return jsonFactory.createGenerator(writer).overrideStdFeatures(generatorFeatures, ~0);
+    }
+
+    /**
+     * Creates a generator capturing a fragment in UTF-8, with the given features of the generator the fragment is
+     * written to.
+     */
+    @NotNull
+    JsonGenerator createGenerator(@NotNull OutputStream stream, int generatorFeatures) throws IOException {
+        return jsonFactory.createGenerator(stream, JsonEncoding.UTF8).overrideStdFeatures(generatorFeatures, ~0);
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        cache.onChange(changes);
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = cache.getHitCount();
+        long lookups = hits + cache.getMissCount();
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return cache.getInvalidationCount();
+    }
+
+    @Override
+    public int getEntryCount() {
+        return cache.getEntryCount();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public long getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Identifies a cached fragment. Besides the resource, it contains everything else the JSON of the subtree depends
+     * on: the user, the settings of the serializer, the kind of generator and the features of the export. Property
+     * filters are compared by their patterns, as exports may create filters of the same patterns.
+     */
+    static final class Key {
+
+        private final String path;
+
+        private final String userId;
+
+        private final int recursionLevels;
+
+        private final int childLimit;
+
+        private final PropertyFilter propertyFilter;
+
+        private final int generatorFeatures;
+
+        private final boolean utf8;
+
+        private final int serializationFeatures;
+
+        private final ResourceSerializer serializer;
+
+        private final int hashCode;
+
+        private final long size;
+
+        Key(
+                String path,
+                String userId,
+                int recursionLevels,
+                int childLimit,
+                PropertyFilter propertyFilter,
+                int generatorFeatures,
+                boolean utf8,
+                int serializationFeatures,
+                ResourceSerializer serializer) {
+            this.path = path;
+            this.userId = userId;
+            this.recursionLevels = recursionLevels;
+            this.childLimit = childLimit;
+            this.propertyFilter = propertyFilter;
+            this.generatorFeatures = generatorFeatures;
+            this.utf8 = utf8;
+            this.serializationFeatures = serializationFeatures;
+            this.serializer = serializer;
+            this.hashCode = Objects.hash(
+                    path,
+                    userId,
+                    recursionLevels,
+                    childLimit,
+                    propertyFilter,
+                    generatorFeatures,
+                    utf8,
+                    serializationFeatures,
+                    System.identityHashCode(serializer));
+            this.size = ENTRY_OVERHEAD + 2L * path.length() + (userId != null ? 2L * userId.length() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && recursionLevels == other.recursionLevels
+                    && childLimit == other.childLimit
+                    && generatorFeatures == other.generatorFeatures
+                    && utf8 == other.utf8
+                    && serializationFeatures == other.serializationFeatures
+                    && propertyFilter.equals(other.propertyFilter)
+                    && serializer == other.serializer
+                    && path.equals(other.path)
+                    && Objects.equals(userId, other.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
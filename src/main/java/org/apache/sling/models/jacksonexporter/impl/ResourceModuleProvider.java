@@ -18,12 +18,23 @@
  */
 package org.apache.sling.models.jacksonexporter.impl;
 
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.jacksonexporter.ModuleProvider;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -34,6 +45,15 @@ public class ResourceModuleProvider implements ModuleProvider {
 
     private static final int DEFAULT_MAX_RECURSION_LEVELS = -1;
 
+    private static final int DEFAULT_MAX_CHILDREN = -1;
+
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 4;
+
+    /**
+     * Number of subtrees which may be queued per thread, further subtrees are serialized on the exporting thread.
+     */
+    private static final int QUEUED_SUBTREES_PER_THREAD = 16;
+
     @ObjectClassDefinition(
             name = "Apache Sling Models Jackson Exporter - Resource object support",
             description =
@@ -42,24 +62,111 @@ public class ResourceModuleProvider implements ModuleProvider {
 
         @AttributeDefinition(
                 name = "Maximum Recursion Levels",
-                description =
-                        "Maximum number of levels of child resources which will be exported for each resource. Specify -1 for infinite.")
+                description = "Maximum number of levels of child resources which will be exported for each resource. "
+                        + "The resource.maxRecursionLevels option may only lower it. Specify -1 for infinite.")
         int max_recursion_levels() default DEFAULT_MAX_RECURSION_LEVELS;
+
+        @AttributeDefinition(
+                name = "Maximum Children",
+                description = "Maximum number of child resources which will be exported for each resource. "
+                        + "Truncated resources contain the offset of the next child in the :nextChildOffset property, "
+                        + "which can be passed in the resource.childOffset option to export the following children. "
+                        + "The resource.childLimit option may only lower it. Specify -1 for infinite.")
+        int max_children() default DEFAULT_MAX_CHILDREN;
+
+        @AttributeDefinition(
+                name = "Included Properties",
+                description = "Glob patterns of the names of the properties which will be exported, e.g. jcr:title or "
+                        + "sling:*. The resource.includeProperties option may only narrow them. "
+                        + "Leave empty to export all properties.")
+        String[] include_properties() default {};
+
+        @AttributeDefinition(
+                name = "Excluded Properties",
+                description = "Glob patterns of the names of the properties which will not be exported, e.g. rep:* or "
+                        + "jcr:created*. The resource.excludeProperties option may add further patterns.")
+        String[] exclude_properties() default {};
+
+        @AttributeDefinition(
+                name = "Parallel Threads",
+                description = "Number of threads serializing the subtrees of the children of an exported resource "
+                        + "in parallel, each with a clone of the resource resolver. Specify 0 to serialize them "
+                        + "one after another on the exporting thread.")
+        int parallel_threads() default 0;
+
+        @AttributeDefinition(
+                name = "Parallel Threshold",
+                description = "Minimum number of children with children of their own an exported resource must have "
+                        + "for serializing their subtrees in parallel.")
+        int parallel_threshold() default DEFAULT_PARALLEL_THRESHOLD;
     }
 
     private SimpleModule moduleInstance;
 
+    private ThreadPoolExecutor parallelExecutor;
+
+    @Reference(
+            cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile ResourceFragmentCache fragmentCache;
+
     @Activate
     private void activate(Config config) {
         final int maxRecursionLevels = config.max_recursion_levels();
+        final int maxChildren = config.max_children();
+        final PropertyFilter propertyFilter =
+                PropertyFilter.create(config.include_properties(), config.exclude_properties(), null);
+        final int parallelThreads = config.parallel_threads();
+        final int parallelThreshold = config.parallel_threshold();
+        if (parallelThreads > 0) {
+            this.parallelExecutor = new ThreadPoolExecutor(
+                    parallelThreads,
+                    parallelThreads,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(parallelThreads * QUEUED_SUBTREES_PER_THREAD),
+                    new SubtreeThreadFactory());
+            parallelExecutor.allowCoreThreadTimeOut(true);
+        }
         this.moduleInstance = new SimpleModule();
         ModelSkippingSerializers serializers = new ModelSkippingSerializers();
-        serializers.addSerializer(Resource.class, new ResourceSerializer(maxRecursionLevels));
+        serializers.addSerializer(
+                Resource.class,
+                new ResourceSerializer(
+                        maxRecursionLevels,
+                        maxChildren,
+                        propertyFilter,
+                        parallelExecutor,
+                        parallelThreshold,
+                        () -> fragmentCache));
         moduleInstance.setSerializers(serializers);
     }
 
+    @Deactivate
+    private void deactivate() {
+        if (parallelExecutor != null) {
+            // subtrees submitted afterwards are serialized on the exporting threads
+            parallelExecutor.shutdown();
+            parallelExecutor = null;
+        }
+    }
+
     @Override
     public Module getModule() {
         return moduleInstance;
     }
+
+    private static final class SubtreeThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread =
+                    new Thread(runnable, "sling-models-jacksonexporter-resource-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -18,52 +18,677 @@
  */
 package org.apache.sling.models.jacksonexporter.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
 import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.core.json.WriterBasedJsonGenerator;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanSerializerFactory;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
 import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.SerializerFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ResourceSerializer extends JsonSerializer<Resource> implements ResolvableSerializer {
 
-    private final int maxRecursionLevels;
+    private static final Logger log = LoggerFactory.getLogger(ResourceSerializer.class);
+
+    /**
+     * Export option with the number of children of the exported resource to skip, for paging through the children.
+     */
+    static final String CHILD_OFFSET = "resource.childOffset";
+
+    /**
+     * Export option with the maximum number of children exported for each resource. It may only lower the configured
+     * maximum.
+     */
+    static final String CHILD_LIMIT = "resource.childLimit";
+
+    /**
+     * Written into the JSON object of a resource whose children were truncated, with the offset of its first child
+     * which was not exported.
+     */
+    static final String NEXT_CHILD_OFFSET = ":nextChildOffset";
+
+    /**
+     * Export option with the maximum number of levels of child resources which are exported. It may only lower the
+     * configured maximum.
+     */
+    static final String MAX_RECURSION_LEVELS = "resource.maxRecursionLevels";
+
+    /**
+     * Export option with comma separated glob patterns of the exported properties. It may only narrow the configured
+     * patterns.
+     */
+    static final String INCLUDE_PROPERTIES = "resource.includeProperties";
+
+    /**
+     * Export option with comma separated glob patterns of properties which are not exported, in addition to the
+     * configured patterns.
+     */
+    static final String EXCLUDE_PROPERTIES = "resource.excludeProperties";
+
+    /**
+     * Options may be passed in via request parameters, so the number of cached property filters has to be bounded.
+     */
+    static final int MAX_CACHED_FILTERS = 128;
+
+    /** the property holding the binary data of file resources, whose length is part of the resource metadata */
+    private static final String JCR_DATA = "jcr:data";
+
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+
+    /** the node types whose {@value #JCR_DATA} property is a binary */
+    private static final Set<String> BINARY_NODE_TYPES = new HashSet<>(Arrays.asList("nt:resource", "oak:Resource"));
+
+    private static final SerializedString NEXT_CHILD_OFFSET_NAME = new SerializedString(NEXT_CHILD_OFFSET);
+
     private JsonSerializer<Object> calendarSerializer;
 
+    /** the settings of exports without options */
+    private final Settings defaultSettings;
+
+    /** property filters of the include and exclude options, combined with the configured filter */
+    private final ConcurrentMap<List<String>, PropertyFilter> exportFilters = new ConcurrentHashMap<>();
+
+    /** executor for serializing subtrees in parallel, or null */
+    private final Executor parallelExecutor;
+
+    /** minimum number of child subtrees of an exported resource for serializing them in parallel */
+    private final int parallelThreshold;
+
+    /** the cache of serialized subtrees, which supplies null if there is none */
+    private final Supplier<ResourceFragmentCache> fragmentCache;
+
+    /** pre-encoded property names, shared by all resources and exports */
+    private final FieldNameCache propertyNames = new FieldNameCache("");
+
+    /** pre-encoded names of the binary properties, which are prefixed with a colon */
+    private final FieldNameCache binaryPropertyNames = new FieldNameCache(":");
+
     public ResourceSerializer(int maxRecursionLevels) {
-        this.maxRecursionLevels = maxRecursionLevels;
+        this(maxRecursionLevels, -1);
+    }
+
+    public ResourceSerializer(int maxRecursionLevels, int maxChildren) {
+        this(maxRecursionLevels, maxChildren, PropertyFilter.ACCEPT_ALL);
+    }
+
+    ResourceSerializer(int maxRecursionLevels, int maxChildren, @NotNull PropertyFilter propertyFilter) {
+        this(maxRecursionLevels, maxChildren, propertyFilter, null, 0, () -> null);
+    }
+
+    /**
+     * @param parallelExecutor executor for serializing the child subtrees of an exported resource in parallel, or
+     *     {@code null} to serialize them on the calling thread
+     * @param parallelThreshold minimum number of child subtrees for serializing them in parallel
+     * @param fragmentCache supplies the cache of serialized subtrees, or {@code null} if there is none
+     */
+    ResourceSerializer(
+            int maxRecursionLevels,
+            int maxChildren,
+            @NotNull PropertyFilter propertyFilter,
+            @Nullable Executor parallelExecutor,
+            int parallelThreshold,
+            @NotNull Supplier<ResourceFragmentCache> fragmentCache) {
+        this.defaultSettings = new Settings(maxRecursionLevels, 0, maxChildren, propertyFilter);
+        this.parallelExecutor = parallelExecutor;
+        this.parallelThreshold = Math.max(parallelThreshold, 2);
+        this.fragmentCache = fragmentCache;
     }
 
     @Override
     public void serialize(final Resource value, final JsonGenerator jgen, final SerializerProvider provider)
             throws IOException {
-        create(value, jgen, 0, provider);
+        final Object options = provider.getAttribute(JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE);
+        final Settings settings = options instanceof Map ? getSettings((Map<?, ?>) options) : defaultSettings;
+        final ResourceFragmentCache fragments = getFragmentCache(jgen);
+        if (fragments != null
+                && settings.childOffset == 0
+                && writeFragment(value, jgen, 0, settings, fragments, provider)) {
+            return;
+        }
+        if (parallelExecutor != null
+                && settings.recursionLevelActive(1)
+                && provider instanceof DefaultSerializerProvider
+                && value.getResourceResolver() != null
+                && isPreEncodingSafe(jgen)) {
+            createParallel(value, jgen, settings, (DefaultSerializerProvider) provider);
+        } else {
+            create(value, jgen, 0, settings.childOffset, settings, null, fragments, provider);
+        }
     }
 
-    /** Dump given resource in JSON, optionally recursing into its objects */
-    @SuppressWarnings({"unused", "null"})
+    /**
+     * Returns the cache of serialized subtrees if its fragments can be spliced into the given generator, which
+     * requires a plain JSON generator writing characters or UTF-8 with the escapes of the fragments and without a
+     * pretty printer. Generators enforcing the content budgets of an export are excluded, as the raw fragments would
+     * bypass their checks, while the output size budget is enforced by the output.
+     */
+    private ResourceFragmentCache getFragmentCache(final JsonGenerator jgen) {
+        final ResourceFragmentCache fragments = fragmentCache.get();
+        final JsonGenerator target = getOutputGenerator(jgen);
+        if (fragments != null
+                && (target instanceof WriterBasedJsonGenerator || target instanceof UTF8JsonGenerator)
+                && jgen.getCharacterEscapes() == JacksonExporter.ESCAPES
+                && jgen.getPrettyPrinter() == null) {
+            return fragments;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the generator writing the output of the given generator, which is wrapped if it enforces the output
+     * size budget of the export only.
+     */
+    private static JsonGenerator getOutputGenerator(final JsonGenerator jgen) {
+        if (jgen instanceof LimitingJsonGenerator && !((LimitingJsonGenerator) jgen).limitsContent()) {
+            return ((LimitingJsonGenerator) jgen).getDelegate();
+        }
+        return jgen;
+    }
+
+    /**
+     * Writes the subtree of the given resource from the cache of serialized subtrees, serializing and caching it on a
+     * miss. The fragments of UTF-8 generators are captured and cached separately, as these escape the characters
+     * outside the basic multilingual plane while the generators writing characters do not.
+     *
+     * @return false if the subtree cannot be cached and has to be serialized
+     */
+    private boolean writeFragment(
+            final Resource resource,
+            final JsonGenerator jgen,
+            final int recursionLevel,
+            final Settings settings,
+            final ResourceFragmentCache fragments,
+            final SerializerProvider provider)
+            throws IOException {
+        final boolean utf8 = getOutputGenerator(jgen) instanceof UTF8JsonGenerator;
+        final ResourceFragmentCache.Key key = fragments.getKey(
+                resource,
+                settings.remainingLevels(recursionLevel),
+                settings.childLimit,
+                settings.propertyFilter,
+                jgen.getFeatureMask(),
+                utf8,
+                provider.getConfig().getSerializationFeatures(),
+                this);
+        if (key == null) {
+            return false;
+        }
+        String fragment = fragments.get(key);
+        if (fragment == null) {
+            final long epoch = fragments.getEpoch();
+            if (utf8) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (JsonGenerator capture = fragments.createGenerator(bytes, jgen.getFeatureMask())) {
+                    create(resource, capture, recursionLevel, 0, settings, null, null, provider);
+                }
+                fragment = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            } else {
+                final StringWriter writer = new StringWriter();
+                try (JsonGenerator capture = fragments.createGenerator(writer, jgen.getFeatureMask())) {
+                    create(resource, capture, recursionLevel, 0, settings, null, null, provider);
+                }
+                fragment = writer.toString();
+            }
+            fragments.put(key, fragment, epoch);
+        }
+        jgen.writeRawValue(fragment);
+        return true;
+    }
+
+    /**
+     * true if pre-encoded field names of the buffered subtrees can be replayed into the given generator unchanged,
+     * which does not apply its character escapes to them
+     */
+    private static boolean isPreEncodingSafe(final JsonGenerator jgen) {
+        final CharacterEscapes escapes = jgen.getCharacterEscapes();
+        return escapes == null || escapes == JacksonExporter.ESCAPES;
+    }
+
+    /** Returns the settings of an export with the given options */
+    private Settings getSettings(final Map<?, ?> options) {
+        final int maxRecursionLevels =
+                lower(defaultSettings.maxRecursionLevels, getIntOption(options, MAX_RECURSION_LEVELS));
+        final int childOffset = Math.max(getIntOption(options, CHILD_OFFSET), 0);
+        final int childLimit = lower(defaultSettings.childLimit, getIntOption(options, CHILD_LIMIT));
+        PropertyFilter propertyFilter = defaultSettings.propertyFilter;
+        final Object includes = options.get(INCLUDE_PROPERTIES);
+        final Object excludes = options.get(EXCLUDE_PROPERTIES);
+        if (includes != null || excludes != null) {
+            propertyFilter = getExportFilter(
+                    includes != null ? includes.toString() : null, excludes != null ? excludes.toString() : null);
+        }
+        if (maxRecursionLevels == defaultSettings.maxRecursionLevels
+                && childOffset == 0
+                && childLimit == defaultSettings.childLimit
+                && propertyFilter == defaultSettings.propertyFilter) {
+            return defaultSettings;
+        }
+        return new Settings(maxRecursionLevels, childOffset, childLimit, propertyFilter);
+    }
+
+    /** Returns the lower of the configured maximum and the option, where -1 stands for no maximum */
+    private static int lower(final int configured, final int option) {
+        if (option >= 0 && (configured < 0 || option < configured)) {
+            return option;
+        }
+        return configured;
+    }
+
+    private PropertyFilter getExportFilter(final String includes, final String excludes) {
+        final List<String> key = Arrays.asList(includes, excludes);
+        PropertyFilter filter = exportFilters.get(key);
+        if (filter == null) {
+            filter = PropertyFilter.create(
+                    includes != null ? includes.split(",") : null,
+                    excludes != null ? excludes.split(",") : null,
+                    defaultSettings.propertyFilter);
+            if (exportFilters.size() < MAX_CACHED_FILTERS) {
+                exportFilters.putIfAbsent(key, filter);
+            }
+        }
+        return filter;
+    }
+
+    /** Returns the non-negative integer value of the given option, or -1 if it is missing or invalid */
+    private static int getIntOption(final Map<?, ?> options, final String name) {
+        final Object value = options.get(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(Integer.parseInt(value.toString().trim()), -1);
+        } catch (NumberFormatException e) {
+            log.debug("Bad {} option: {}", name, value);
+            return -1;
+        }
+    }
+
+    /**
+     * Dump given resource in JSON, optionally recursing into its objects. The tree is traversed depth first with an
+     * explicit stack holding the children of the resources whose JSON objects are still open, so the Java stack depth
+     * does not grow with the depth of the tree. The subtrees of the children are written from the given cache of
+     * serialized subtrees if it is not null.
+     */
     private void create(
+            final Resource resource,
+            final JsonGenerator jgen,
+            final int recursionLevel,
+            final int childOffset,
+            final Settings settings,
+            final AtomicBoolean aborted,
+            final ResourceFragmentCache fragments,
+            final SerializerProvider provider)
+            throws IOException {
+        final Deque<Children> openResources = new ArrayDeque<>();
+        openResources.push(open(resource, jgen, recursionLevel, childOffset, settings, provider));
+        while (!openResources.isEmpty()) {
+            if (aborted != null && aborted.get()) {
+                throw new InterruptedIOException("Export of " + resource.getPath() + " aborted");
+            }
+            final Children children = openResources.peek();
+            if (children.hasNext()) {
+                final Resource n = children.next();
+                jgen.writeFieldName(n.getName());
+                // the level of the child equals the number of its open ancestors
+                final int level = recursionLevel + openResources.size();
+                if (fragments == null || !writeFragment(n, jgen, level, settings, fragments, provider)) {
+                    openResources.push(open(n, jgen, level, 0, settings, provider));
+                }
+            } else {
+                if (children.isTruncated()) {
+                    jgen.writeFieldName(NEXT_CHILD_OFFSET_NAME);
+                    jgen.writeNumber(children.getNextOffset());
+                }
+                openResources.pop();
+                jgen.writeEndObject();
+            }
+        }
+    }
+
+    /**
+     * Dump given resource in JSON like {@link #create}, but serialize the subtrees of its children in parallel into
+     * buffers, each with its own serializer provider and the resource resolver clone of its thread. The buffers are
+     * written in document order, so the output is the same as of the serial traversal. The subtrees are written
+     * through generators enforcing the budgets of the export, and the calling thread serializes the subtrees which no
+     * other thread has started when they are written, instead of waiting for them.
+     * <p>
+     * The subtrees are resolved again by path with the clones, which only yields the same resources for the resources
+     * of the resolver itself. Children of another class, like wrapped or synthetic resources, are serialized serially.
+     */
+    private void createParallel(
+            final Resource resource,
+            final JsonGenerator jgen,
+            final Settings settings,
+            final DefaultSerializerProvider provider)
+            throws IOException {
+        final Resource resolved = resource.getResourceResolver().getResource(resource.getPath());
+        final Class<?> resolvedType = resolved != null ? resolved.getClass() : null;
+        final Children children = open(resource, jgen, 0, settings.childOffset, settings, provider);
+        final List<Resource> childList = new ArrayList<>();
+        final BitSet subtrees = new BitSet();
+        while (children.hasNext()) {
+            final Resource child = children.next();
+            if (child.getClass() == resolvedType && child.hasChildren()) {
+                subtrees.set(childList.size());
+            }
+            childList.add(child);
+        }
+        final boolean parallel = subtrees.cardinality() >= parallelThreshold;
+        final LimitingJsonGenerator limited =
+                jgen instanceof LimitingJsonGenerator ? (LimitingJsonGenerator) jgen : null;
+        // the objects of the buffers were counted by the generators of the subtrees
+        final JsonGenerator target = limited != null ? limited.getDelegate() : jgen;
+        final ParallelExport export = new ParallelExport(resource.getResourceResolver(), limited);
+        final List<Subtree> buffers = new ArrayList<>(childList.size());
+        try {
+            for (int i = 0; i < childList.size(); i++) {
+                buffers.add(
+                        parallel && subtrees.get(i)
+                                ? submit(childList.get(i), jgen, settings, export, provider)
+                                : null);
+            }
+            for (int i = 0; i < childList.size(); i++) {
+                final Resource child = childList.get(i);
+                jgen.writeFieldName(child.getName());
+                final TokenBuffer buffer =
+                        buffers.get(i) != null ? buffers.get(i).await() : null;
+                if (buffer != null) {
+                    buffer.serialize(target);
+                } else {
+                    create(child, jgen, 1, 0, settings, null, null, provider);
+                }
+            }
+        } finally {
+            export.finish(buffers);
+        }
+        if (children.isTruncated()) {
+            jgen.writeFieldName(NEXT_CHILD_OFFSET_NAME);
+            jgen.writeNumber(children.getNextOffset());
+        }
+        jgen.writeEndObject();
+    }
+
+    /**
+     * Submits the serialization of the subtree of the given resource.
+     */
+    private Subtree submit(
+            final Resource resource,
+            final JsonGenerator jgen,
+            final Settings settings,
+            final ParallelExport export,
+            final DefaultSerializerProvider provider) {
+        // serializer providers must not be shared between threads; the subtree providers use the serializer factory
+        // of the mapper, so the serializer modifiers of its modules apply like in the serial traversal
+        final Object factory = provider.getAttribute(JacksonExporter.SERIALIZER_FACTORY_ATTRIBUTE);
+        final SerializerProvider subtreeProvider = provider.createInstance(
+                provider.getConfig(),
+                factory instanceof SerializerFactory ? (SerializerFactory) factory : BeanSerializerFactory.instance);
+        final Subtree subtree = new Subtree(resource.getPath(), jgen, settings, export, subtreeProvider);
+        export.pending.incrementAndGet();
+        try {
+            parallelExecutor.execute(subtree.task);
+        } catch (RejectedExecutionException e) {
+            // the executor is saturated or shut down, the calling thread serializes the subtree when writing it
+            log.debug("Cannot submit the serialization of {}: {}", resource.getPath(), e.getMessage());
+        }
+        return subtree;
+    }
+
+    /**
+     * The state shared by the subtrees of a parallel export. Each thread serializing subtrees uses one clone of the
+     * resource resolver, which is closed once no subtree is serialized anymore.
+     */
+    private static final class ParallelExport {
+
+        private final Thread caller = Thread.currentThread();
+
+        private final ResourceResolver resolver;
+
+        /** the generator enforcing the budgets of the export, or null */
+        private final LimitingJsonGenerator limited;
+
+        /** the nesting depth of the subtrees */
+        private final int depth;
+
+        private final AtomicLong bufferedChars = new AtomicLong();
+
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        private final Map<Thread, ResourceResolver> clones = new ConcurrentHashMap<>();
+
+        /** the subtrees which may still be serialized, plus one until the calling thread is finished */
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        ParallelExport(final ResourceResolver resolver, final LimitingJsonGenerator limited) {
+            this.resolver = resolver;
+            this.limited = limited;
+            this.depth = limited != null ? limited.getDepth() : 0;
+        }
+
+        /** Returns the resource resolver of the current thread, or null if it cannot be cloned */
+        ResourceResolver getResolver(final String path) {
+            final Thread thread = Thread.currentThread();
+            if (thread == caller) {
+                return resolver;
+            }
+            ResourceResolver clone = clones.get(thread);
+            if (clone == null) {
+                try {
+                    clone = resolver.clone(null);
+                } catch (LoginException e) {
+                    log.debug("Cannot clone resource resolver, serializing {} serially", path, e);
+                    return null;
+                }
+                clones.put(thread, clone);
+            }
+            return clone;
+        }
+
+        JsonGenerator limit(final TokenBuffer buffer) {
+            return limited != null ? limited.subtree(buffer, depth, bufferedChars) : buffer;
+        }
+
+        /** Aborts the subtrees which are still serialized and cancels the ones which were not started */
+        void finish(final List<Subtree> subtrees) {
+            aborted.set(true);
+            for (final Subtree subtree : subtrees) {
+                if (subtree != null && subtree.started.compareAndSet(false, true)) {
+                    subtree.task.cancel(false);
+                    release();
+                }
+            }
+            release();
+        }
+
+        void release() {
+            if (pending.decrementAndGet() == 0) {
+                for (final ResourceResolver clone : clones.values()) {
+                    clone.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * The serialization of the subtree of a child resource into a buffer.
+     */
+    private final class Subtree implements Callable<TokenBuffer> {
+
+        private final String path;
+
+        private final JsonGenerator jgen;
+
+        private final Settings settings;
+
+        private final ParallelExport export;
+
+        private final SerializerProvider provider;
+
+        /** set by the thread serializing the subtree, or when it is cancelled */
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private final FutureTask<TokenBuffer> task = new FutureTask<>(this);
+
+        Subtree(
+                final String path,
+                final JsonGenerator jgen,
+                final Settings settings,
+                final ParallelExport export,
+                final SerializerProvider provider) {
+            this.path = path;
+            this.jgen = jgen;
+            this.settings = settings;
+            this.export = export;
+            this.provider = provider;
+        }
+
+        @Override
+        public TokenBuffer call() throws IOException {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                final ResourceResolver resolver = export.aborted.get() ? null : export.getResolver(path);
+                final Resource subtree = resolver != null ? resolver.getResource(path) : null;
+                if (subtree == null) {
+                    log.debug("Cannot resolve {} on another thread, serializing it serially", path);
+                    return null;
+                }
+                final TokenBuffer buffer = new TokenBuffer(jgen.getCodec(), false);
+                create(subtree, export.limit(buffer), 1, 0, settings, export.aborted, null, provider);
+                return buffer;
+            } finally {
+                export.release();
+            }
+        }
+
+        /**
+         * Returns the buffered subtree, or null if it has to be serialized on the calling thread. The subtree is
+         * serialized on the calling thread if no other thread has started it yet, and waiting for it is bounded by
+         * the deadline of the export.
+         */
+        TokenBuffer await() throws IOException {
+            task.run();
+            try {
+                final long remaining = export.limited != null ? export.limited.getRemainingNanos() : Long.MAX_VALUE;
+                return remaining == Long.MAX_VALUE ? task.get() : task.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw export.limited.timeoutExceeded();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while serializing a subtree");
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Starts the JSON object of the given resource and writes its properties.
+     *
+     * @return the children to write into the object before it is closed
+     */
+    private Children open(
             final Resource resource,
             final JsonGenerator jgen,
             final int currentRecursionLevel,
+            final int childOffset,
+            final Settings settings,
             final SerializerProvider provider)
             throws IOException {
         jgen.writeStartObject();
+        createProperties(resource, jgen, settings.propertyFilter, provider);
 
+        // the child nodes
+        if (settings.recursionLevelActive(currentRecursionLevel)) {
+            final Iterator<Resource> children = resource.getChildren().iterator();
+            // the repository has no way to skip children without iterating them
+            int skipped = 0;
+            while (skipped < childOffset && children.hasNext()) {
+                children.next();
+                skipped++;
+            }
+            return new Children(children, skipped, settings.childLimit);
+        }
+        return Children.NONE;
+    }
+
+    /** Dump the properties of the given resource */
+    @SuppressWarnings({"unused", "null"})
+    private void createProperties(
+            final Resource resource,
+            final JsonGenerator jgen,
+            final PropertyFilter propertyFilter,
+            final SerializerProvider provider)
+            throws IOException {
         final ValueMap valueMap = resource.adaptTo(ValueMap.class);
 
         final Map propertyMap = (valueMap != null) ? valueMap : resource.adaptTo(Map.class);
 
+        final long binaryLength = getBinaryLength(resource, valueMap);
+
         if (propertyMap == null) {
 
+            if (!propertyFilter.accept(resource.getName())) {
+                return;
+            }
+
             // no map available, try string
             final String value = resource.adaptTo(String.class);
             if (value != null) {
@@ -84,7 +709,7 @@ public class ResourceSerializer extends JsonSerializer<Resource> implements Reso
                 }
             }
 
-        } else {
+        } else if (propertyFilter.isAcceptAll() && binaryLength < 0) {
 
             @SuppressWarnings("unchecked")
             final Iterator<Map.Entry> props = propertyMap.entrySet().iterator();
@@ -97,23 +722,48 @@ public class ResourceSerializer extends JsonSerializer<Resource> implements Reso
                     createProperty(jgen, valueMap, prop.getKey().toString(), prop.getValue(), provider);
                 }
             }
-        }
+        } else {
 
-        // the child nodes
-        if (recursionLevelActive(currentRecursionLevel)) {
-            for (final Resource n : resource.getChildren()) {
-                jgen.writeFieldName(n.getName());
-                create(n, jgen, currentRecursionLevel + 1, provider);
+            // filter by the names, so the values of filtered properties are neither read nor converted, and write the
+            // binary length from the metadata
+            for (final Object name : propertyMap.keySet()) {
+                final String key = name.toString();
+                if (!propertyFilter.accept(key)) {
+                    continue;
+                }
+                if (binaryLength >= 0 && JCR_DATA.equals(key)) {
+                    // the binary stream is not opened
+                    binaryPropertyNames.writeFieldName(jgen, key);
+                    jgen.writeNumber(binaryLength);
+                    continue;
+                }
+                final Object value = propertyMap.get(name);
+                if (value != null) {
+                    createProperty(jgen, valueMap, key, value, provider);
+                }
             }
         }
+    }
 
-        jgen.writeEndObject();
+    /**
+     * Returns the length of the {@value #JCR_DATA} binary of the given resource from its metadata, or -1 if the
+     * metadata does not provide it. The resource provider determines the content length without opening the binary.
+     * Only resources of a node type whose {@value #JCR_DATA} property is a binary are considered, as the metadata of
+     * other resources may provide a content length as well.
+     */
+    private static long getBinaryLength(final Resource resource, final ValueMap valueMap) {
+        if (valueMap == null
+                || !BINARY_NODE_TYPES.contains(valueMap.get(JCR_PRIMARY_TYPE, String.class))
+                || !valueMap.containsKey(JCR_DATA)) {
+            return -1;
+        }
+        final ResourceMetadata metadata = resource.getResourceMetadata();
+        return metadata != null ? Math.max(metadata.getContentLength(), -1) : -1;
     }
 
     /**
      * Write a single property
      */
-    @SuppressWarnings("null")
     private void createProperty(
             final JsonGenerator jgen,
             final ValueMap valueMap,
@@ -121,44 +771,87 @@ public class ResourceSerializer extends JsonSerializer<Resource> implements Reso
             final Object value,
             final SerializerProvider provider)
             throws IOException {
-        Object[] values = null;
         if (value.getClass().isArray()) {
-            final int length = Array.getLength(value);
-            // write out empty array
-            if (length == 0) {
-                jgen.writeArrayFieldStart(key);
-                jgen.writeEndArray();
-                return;
-            }
-            values = new Object[Array.getLength(value)];
-            for (int i = 0; i < length; i++) {
-                values[i] = Array.get(value, i);
-            }
+            createMultiValueProperty(jgen, valueMap, key, value, provider);
+            return;
         }
 
         // special handling for binaries: we dump the length and not the data!
-        if (value instanceof InputStream || (values != null && values[0] instanceof InputStream)) {
+        if (value instanceof InputStream) {
             // TODO for now we mark binary properties with an initial colon in
             // their name
             // (colon is not allowed as a JCR property name)
             // in the name, and the value should be the size of the binary data
-            if (values == null) {
-                jgen.writeNumberField(":" + key, getLength(valueMap, -1, key, (InputStream) value));
+            binaryPropertyNames.writeFieldName(jgen, key);
+            jgen.writeNumber(getLength(valueMap, -1, key, (InputStream) value));
+            return;
+        }
+
+        propertyNames.writeFieldName(jgen, key);
+        writeValue(jgen, value, provider);
+    }
+
+    /**
+     * Write a multi-value property. Arrays of the types returned by value maps are written element by element without
+     * copying or boxing them, all other arrays are written like their boxed elements.
+     */
+    @SuppressWarnings("null")
+    private void createMultiValueProperty(
+            final JsonGenerator jgen,
+            final ValueMap valueMap,
+            final String key,
+            final Object value,
+            final SerializerProvider provider)
+            throws IOException {
+        if (value instanceof String[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (String[]) value);
+        } else if (value instanceof long[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (long[]) value);
+        } else if (value instanceof int[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (int[]) value);
+        } else if (value instanceof double[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (double[]) value);
+        } else if (value instanceof boolean[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (boolean[]) value);
+        } else if (value instanceof Long[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (Long[]) value);
+        } else if (value instanceof Integer[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (Integer[]) value);
+        } else if (value instanceof Double[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (Double[]) value);
+        } else if (value instanceof Boolean[]) {
+            propertyNames.writeFieldName(jgen, key);
+            writeArray(jgen, (Boolean[]) value);
+        } else {
+            final Object[] values;
+            if (value instanceof Object[]) {
+                values = (Object[]) value;
             } else {
-                jgen.writeArrayFieldStart(":" + key);
+                values = new Object[Array.getLength(value)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Array.get(value, i);
+                }
+            }
+            // special handling for binaries: we dump the lengths and not the data!
+            if (values.length > 0 && values[0] instanceof InputStream) {
+                binaryPropertyNames.writeFieldName(jgen, key);
+                jgen.writeStartArray();
                 for (int i = 0; i < values.length; i++) {
                     jgen.writeNumber(getLength(valueMap, i, key, (InputStream) values[i]));
                 }
                 jgen.writeEndArray();
+                return;
             }
-            return;
-        }
-
-        if (!value.getClass().isArray()) {
-            jgen.writeFieldName(key);
-            writeValue(jgen, value, provider);
-        } else {
-            jgen.writeArrayFieldStart(key);
+            propertyNames.writeFieldName(jgen, key);
+            jgen.writeStartArray();
             for (Object v : values) {
                 writeValue(jgen, v, provider);
             }
@@ -166,9 +859,93 @@ public class ResourceSerializer extends JsonSerializer<Resource> implements Reso
         }
     }
 
-    /** true if the current recursion level is active */
-    private boolean recursionLevelActive(final int currentRecursionLevel) {
-        return maxRecursionLevels < 0 || currentRecursionLevel < maxRecursionLevels;
+    private static void writeArray(final JsonGenerator jgen, final String[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final String v : values) {
+            // null values are written as empty string like by writeValue
+            jgen.writeString(v != null ? v : "");
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final long[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final long v : values) {
+            jgen.writeNumber(v);
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final int[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final int v : values) {
+            jgen.writeNumber(v);
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final double[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final double v : values) {
+            jgen.writeNumber(v);
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final boolean[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final boolean v : values) {
+            jgen.writeBoolean(v);
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final Long[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final Long v : values) {
+            if (v != null) {
+                jgen.writeNumber(v.longValue());
+            } else {
+                jgen.writeString("");
+            }
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final Integer[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final Integer v : values) {
+            if (v != null) {
+                jgen.writeNumber(v.intValue());
+            } else {
+                jgen.writeString("");
+            }
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final Double[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final Double v : values) {
+            if (v != null) {
+                jgen.writeNumber(v.doubleValue());
+            } else {
+                jgen.writeString("");
+            }
+        }
+        jgen.writeEndArray();
+    }
+
+    private static void writeArray(final JsonGenerator jgen, final Boolean[] values) throws IOException {
+        jgen.writeStartArray();
+        for (final Boolean v : values) {
+            if (v != null) {
+                jgen.writeBoolean(v.booleanValue());
+            } else {
+                jgen.writeString("");
+            }
+        }
+        jgen.writeEndArray();
     }
 
     private long getLength(final ValueMap valueMap, final int index, final String key, final InputStream stream) {
@@ -218,4 +995,76 @@ public class ResourceSerializer extends JsonSerializer<Resource> implements Reso
     public void resolve(SerializerProvider provider) throws JsonMappingException {
         this.calendarSerializer = provider.findValueSerializer(Calendar.class, null);
     }
+
+    /** The settings of an export */
+    private static final class Settings {
+
+        final int maxRecursionLevels;
+
+        final int childOffset;
+
+        final int childLimit;
+
+        final PropertyFilter propertyFilter;
+
+        Settings(
+                final int maxRecursionLevels,
+                final int childOffset,
+                final int childLimit,
+                final PropertyFilter propertyFilter) {
+            this.maxRecursionLevels = maxRecursionLevels;
+            this.childOffset = childOffset;
+            this.childLimit = childLimit;
+            this.propertyFilter = propertyFilter;
+        }
+
+        /** true if the current recursion level is active */
+        boolean recursionLevelActive(final int currentRecursionLevel) {
+            return maxRecursionLevels < 0 || currentRecursionLevel < maxRecursionLevels;
+        }
+
+        /** Returns the number of levels of child resources written below the given level, or -1 for all */
+        int remainingLevels(final int currentRecursionLevel) {
+            return maxRecursionLevels < 0 ? -1 : Math.max(maxRecursionLevels - currentRecursionLevel, 0);
+        }
+    }
+
+    /** The children of a resource which are still to be written, limited to the maximum number of children */
+    private static final class Children {
+
+        static final Children NONE = new Children(Collections.emptyIterator(), 0, -1);
+
+        private final Iterator<Resource> iterator;
+
+        private int nextOffset;
+
+        private int remaining;
+
+        Children(final Iterator<Resource> iterator, final int offset, final int limit) {
+            this.iterator = iterator;
+            this.nextOffset = offset;
+            this.remaining = limit;
+        }
+
+        boolean hasNext() {
+            return remaining != 0 && iterator.hasNext();
+        }
+
+        Resource next() {
+            if (remaining > 0) {
+                remaining--;
+            }
+            nextOffset++;
+            return iterator.next();
+        }
+
+        /** true if the limit was reached before all children were written */
+        boolean isTruncated() {
+            return remaining == 0 && iterator.hasNext();
+        }
+
+        int getNextOffset() {
+            return nextOffset;
+        }
+    }
 }
@@ -15,5 +15,5 @@
  * limitations under the License.
  */
 
-@org.osgi.annotation.versioning.Version("1.0.1")
+@org.osgi.annotation.versioning.Version("1.1.0")
 package org.apache.sling.models.jacksonexporter;
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.sling.models.export.spi.ModelExporter;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link SmileExporter} and {@link CborExporter} by decoding their output and comparing it with the JSON
+ * output of the {@link JacksonExporter}.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class BinaryExporterTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final Map<String, Object> model = new LinkedHashMap<>();
+
+    private JacksonExporter jacksonExporter;
+
+    @BeforeEach
+    void setUp() {
+        model.put("text", "<script>ä€😀</script>");
+        model.put("number", 42);
+        model.put("large", Long.MAX_VALUE);
+        model.put("decimal", 1.5d);
+        model.put("flag", true);
+        model.put("empty", null);
+        model.put("list", Arrays.asList("a", 1, false));
+        model.put("child", Collections.singletonMap("name", "child"));
+        jacksonExporter = context.registerInjectActivateService(JacksonExporter.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SmileExporter.class, CborExporter.class})
+    void testRoundTripMatchesJson(Class<? extends ModelExporter> exporterClass) throws Exception {
+        ModelExporter underTest = context.registerInjectActivateService(exporterClass);
+        for (Map<String, String> options : Arrays.asList(
+                Collections.<String, String>emptyMap(),
+                Collections.singletonMap("SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS", "true"))) {
+            byte[] bytes = underTest.export(model, byte[].class, options);
+            String json = jacksonExporter.export(model, String.class, options);
+            assertEquals(
+                    normalize(jsonMapper, json.getBytes(StandardCharsets.UTF_8)),
+                    normalize(binaryMapper(underTest), bytes));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SmileExporter.class, CborExporter.class})
+    void testStreamingExport(Class<? extends ModelExporter> exporterClass) throws ExportException {
+        ModelExporter underTest = context.registerInjectActivateService(exporterClass);
+        Map<String, String> options = Collections.emptyMap();
+        byte[] bytes = underTest.export(model, byte[].class, options);
+
+        StreamingExport export = underTest.export(model, StreamingExport.class, options);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        export.writeTo(stream);
+        assertArrayEquals(bytes, stream.toByteArray());
+        assertThrows(ExportException.class, () -> export.writeTo(new StringWriter()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SmileExporter.class, CborExporter.class})
+    void testSupportedTargets(Class<? extends ModelExporter> exporterClass) throws ExportException {
+        ModelExporter underTest = context.registerInjectActivateService(exporterClass);
+        assertTrue(underTest.isSupported(byte[].class));
+        assertTrue(underTest.isSupported(StreamingExport.class));
+        assertFalse(underTest.isSupported(String.class));
+        assertFalse(underTest.isSupported(Map.class));
+        assertNull(underTest.export(model, String.class, Collections.emptyMap()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(classes = {SmileExporter.class, CborExporter.class})
+    void testBinaryEncoding(Class<? extends ModelExporter> exporterClass) throws ExportException {
+        ModelExporter underTest = context.registerInjectActivateService(exporterClass);
+        byte[] bytes = underTest.export(model, byte[].class, Collections.emptyMap());
+        if (underTest instanceof SmileExporter) {
+            assertEquals("jackson-smile", underTest.getName());
+            // Smile header ":)\n"
+            assertArrayEquals(new byte[] {':', ')', '\n'}, Arrays.copyOf(bytes, 3));
+        } else {
+            assertEquals("jackson-cbor", underTest.getName());
+            // CBOR major type 5, a map
+            assertEquals(0xa0, bytes[0] & 0xe0);
+        }
+        assertTrue(bytes.length < jacksonExporter.export(model, byte[].class, Collections.emptyMap()).length);
+    }
+
+    private static ObjectMapper binaryMapper(ModelExporter exporter) {
+        JsonFactory factory = exporter instanceof SmileExporter ? new SmileFactory() : new CBORFactory();
+        return new ObjectMapper(factory);
+    }
+
+    /**
+     * Decodes the given content and encodes it as JSON again, so that the output of all formats can be compared
+     * byte by byte including the order of the properties.
+     */
+    private String normalize(ObjectMapper mapper, byte[] content) throws Exception {
+        return jsonMapper.writeValueAsString(mapper.readTree(content));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that exports through the {@link BlackbirdModuleProvider} match the exports through reflection.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class BlackbirdModuleProviderTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    @Test
+    void testExportMatchesReflectiveExport() throws ExportException {
+        Model model = new Model();
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        String reflective = underTest.export(model, String.class, options);
+        Map<?, ?> reflectiveMap = underTest.export(model, Map.class, options);
+
+        BlackbirdModuleProvider provider = context.registerInjectActivateService(BlackbirdModuleProvider.class);
+        assertTrue(provider.getModule() instanceof BlackbirdModule);
+        assertEquals(reflective, underTest.export(model, String.class, options));
+        assertEquals(reflectiveMap, underTest.export(model, Map.class, options));
+    }
+
+    @Test
+    void testProviderIsBoundAsModuleProvider() {
+        BlackbirdModuleProvider provider = context.registerInjectActivateService(BlackbirdModuleProvider.class);
+        assertEquals(provider, context.getService(ModuleProvider.class));
+    }
+
+    public static class Model {
+
+        public String getTitle() {
+            return "Title";
+        }
+
+        public int getCount() {
+            return 3;
+        }
+
+        public long getSize() {
+            return Long.MAX_VALUE;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        public double getRatio() {
+            return 0.25;
+        }
+
+        public String getMissing() {
+            return null;
+        }
+
+        public List<ExamplePojo> getItems() {
+            return Arrays.asList(
+                    new ExamplePojo().stringProp("a").numberProp(1).booleanProp(true),
+                    new ExamplePojo().stringProp("b"));
+        }
+    }
+}
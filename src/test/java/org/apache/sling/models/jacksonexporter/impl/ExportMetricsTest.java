@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.sling.models.export.spi.ModelExporter;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the export statistics recorded by {@link ExportMetrics}.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class ExportMetricsTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    private ExportMetrics metrics;
+
+    private JacksonExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        metrics = context.registerInjectActivateService(ExportMetrics.class, "max.rows", 10);
+        exporter = context.registerInjectActivateService(JacksonExporter.class);
+    }
+
+    @Test
+    void testRecordsExports() throws Exception {
+        Model model = new Model();
+        String json = exporter.export(model, String.class, options);
+        exporter.export(model, String.class, options);
+        byte[] bytes = exporter.export(model, byte[].class, options);
+
+        CompositeData strings = getRow(Model.class.getName(), "String", "JSON");
+        assertEquals(2L, strings.get("count"));
+        assertEquals(0L, strings.get("failures"));
+        assertEquals(2L * json.length(), strings.get("outputLength"));
+        assertEquals(2L, sum((long[]) strings.get("latencyHistogram")));
+        assertEquals(metrics.getLatencyBucketBounds().length + 1, ((long[]) strings.get("latencyHistogram")).length);
+
+        CompositeData byteArrays = getRow(Model.class.getName(), "byte[]", "JSON");
+        assertEquals(1L, byteArrays.get("count"));
+        assertEquals((long) bytes.length, byteArrays.get("outputLength"));
+    }
+
+    @Test
+    void testRecordsStreamingExportsWhenWritten() throws Exception {
+        Model model = new Model();
+        StreamingExport export = exporter.export(model, StreamingExport.class, options);
+        assertNull(getRow(Model.class.getName(), "StreamingExport", "JSON"));
+
+        StringWriter writer = new StringWriter();
+        export.writeTo(writer);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        export.writeDigestedTo(stream);
+
+        CompositeData streaming = getRow(Model.class.getName(), "StreamingExport", "JSON");
+        assertEquals(2L, streaming.get("count"));
+        assertEquals((long) writer.toString().length() + stream.toByteArray().length, streaming.get("outputLength"));
+        assertEquals(writer.toString(), new String(stream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRecordsFailures() throws Exception {
+        assertThrows(ExportException.class, () -> exporter.export(new FailingModel(), String.class, options));
+
+        CompositeData failures = getRow(FailingModel.class.getName(), "String", "JSON");
+        assertEquals(1L, failures.get("count"));
+        assertEquals(1L, failures.get("failures"));
+        assertEquals(0L, failures.get("outputLength"));
+    }
+
+    @Test
+    void testRecordsFormatsSeparately() throws Exception {
+        Model model = new Model();
+        byte[] json = exporter.export(model, byte[].class, options);
+        ModelExporter smileExporter = context.registerInjectActivateService(SmileExporter.class);
+        byte[] smile = smileExporter.export(model, byte[].class, options);
+
+        assertEquals(
+                (long) json.length,
+                getRow(Model.class.getName(), "byte[]", "JSON").get("outputLength"));
+        assertEquals(
+                (long) smile.length,
+                getRow(Model.class.getName(), "byte[]", "Smile").get("outputLength"));
+    }
+
+    @Test
+    void testRowsAreBounded() throws Exception {
+        metrics = new ExportMetrics();
+        MockOsgi.activate(metrics, context.bundleContext(), "max.rows", 1);
+        metrics.record(Model.class, String.class, "JSON", 1000, 10, true);
+        // the bound applies to the combinations of model class, target and format
+        metrics.record(Model.class, String.class, "Smile", 1000, 10, true);
+        metrics.record(FailingModel.class, String.class, "JSON", 1000, 10, false);
+
+        assertEquals(1L, getRow(Model.class.getName(), "String", "JSON").get("count"));
+        assertNull(getRow(Model.class.getName(), "String", "Smile"));
+        assertEquals(
+                1L, getRow(ExportMetrics.OTHER_MODEL_CLASSES, "String", "Smile").get("count"));
+        assertEquals(
+                1L, getRow(ExportMetrics.OTHER_MODEL_CLASSES, "String", "JSON").get("failures"));
+    }
+
+    @Test
+    void testReset() throws Exception {
+        exporter.export(new Model(), String.class, options);
+        assertEquals(1, metrics.getStatistics().size());
+
+        metrics.reset();
+        assertTrue(metrics.getStatistics().isEmpty());
+    }
+
+    private CompositeData getRow(String modelClass, String target, String format) throws Exception {
+        TabularData statistics = metrics.getStatistics();
+        return statistics.get(new Object[] {modelClass, target, format});
+    }
+
+    private static long sum(long[] values) {
+        long result = 0;
+        for (long value : values) {
+            result += value;
+        }
+        return result;
+    }
+
+    public static class Model {
+
+        public String getTitle() {
+            return "Title";
+        }
+
+        public int[] getValues() {
+            return new int[] {1, 2, 3};
+        }
+    }
+
+    public static class FailingModel {
+
+        public String getTitle() {
+            throw new IllegalStateException("failing getter");
+        }
+    }
+}
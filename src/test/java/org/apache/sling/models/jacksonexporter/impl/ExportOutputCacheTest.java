@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.CacheableModel;
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.apache.sling.testing.resourceresolver.MockHelper;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@ExtendWith(OsgiContextExtension.class)
+class ExportOutputCacheTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private ResourceResolver resolver;
+
+    private ExportOutputCache cache;
+
+    private JacksonExporter exporter;
+
+    private Resource page;
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    @BeforeEach
+    void setUp() throws LoginException, PersistenceException {
+        cache = context.registerInjectActivateService(
+                ExportOutputCache.class, "resource.paths", new String[] {"/content"});
+        exporter = context.registerInjectActivateService(JacksonExporter.class);
+        resolver = new MockResourceResolverFactory().getResourceResolver(null);
+        MockHelper.create(resolver)
+                .resource("/content")
+                .resource("/content/page")
+                .p("title", "Page")
+                .resource("/content/page/child")
+                .resource("/apps")
+                .resource("/apps/component")
+                .p("title", "Component")
+                .commit();
+        page = resolver.getResource("/content/page");
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.close();
+    }
+
+    @Test
+    void testExportIsServedFromCache() throws ExportException {
+        CountingModel model = new CountingModel(page);
+        String first = exporter.export(model, String.class, options);
+        String second = exporter.export(new CountingModel(page), String.class, options);
+        assertEquals("{\"title\":\"Page\"}", first);
+        assertEquals(first, second);
+        assertEquals(1, model.calls);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    void testOptionsAndTargetsAreCachedSeparately() throws ExportException {
+        exporter.export(new CountingModel(page), String.class, options);
+        exporter.export(new CountingModel(page), String.class, Collections.singletonMap("tidy", "true"));
+        byte[] bytes = exporter.export(new CountingModel(page), byte[].class, options);
+        assertEquals("{\"title\":\"Page\"}", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void testCachedByteArrayIsNotShared() throws ExportException {
+        byte[] first = exporter.export(new CountingModel(page), byte[].class, options);
+        first[0] = 0;
+        byte[] second = exporter.export(new CountingModel(page), byte[].class, options);
+        assertEquals('{', second[0]);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testInvalidationByResourceChanges() throws ExportException {
+        assertCachedAfterChangeOf("/content/other", true);
+        assertCachedAfterChangeOf("/content/page-2", true);
+        assertCachedAfterChangeOf("/content/page", false);
+        assertCachedAfterChangeOf("/content/page/child/grandchild", false);
+        assertCachedAfterChangeOf("/content", false);
+        assertCachedAfterChangeOf("/", false);
+    }
+
+    @Test
+    void testEvictionOfLeastRecentlyUsedEntries() {
+        cache = context.registerInjectActivateService(
+                ExportOutputCache.class, "max.size", 700L, "resource.paths", new String[] {"/content"});
+        CountingModel model = new CountingModel(page);
+        cache.put(
+                cache.getKey(model, String.class, MappingOptions.EMPTY, options, "SHA-256", 0), "a", cache.getEpoch());
+        cache.put(
+                cache.getKey(model, String.class, MappingOptions.EMPTY, options, "SHA-256", 1), "b", cache.getEpoch());
+        cache.put(
+                cache.getKey(model, String.class, MappingOptions.EMPTY, options, "SHA-256", 2), "c", cache.getEpoch());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getEntryCount());
+        assertNull(cache.get(cache.getKey(model, String.class, MappingOptions.EMPTY, options, "SHA-256", 0)));
+    }
+
+    @Test
+    void testOutputSerializedBeforeInvalidationIsNotCached() {
+        CountingModel model = new CountingModel(page);
+        ExportOutputCache.Key key = cache.getKey(model, String.class, MappingOptions.EMPTY, options, "SHA-256", 0);
+        long epoch = cache.getEpoch();
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/page", false)));
+        cache.put(key, "stale", epoch);
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    void testDigestAlgorithmIsPartOfKey() {
+        CountingModel model = new CountingModel(page);
+        cache.put(
+                cache.getKey(model, String.class, MappingOptions.EMPTY, options, "SHA-256", 0), "a", cache.getEpoch());
+        assertNull(cache.get(cache.getKey(model, String.class, MappingOptions.EMPTY, options, "MD5", 0)));
+    }
+
+    @Test
+    void testOutputOfPreviousExporterIsNotServed() throws ExportException {
+        exporter.export(new CountingModel(page), String.class, options);
+        assertEquals(1, cache.getEntryCount());
+        // like after a configuration change, which the keys do not contain
+        JacksonExporter reactivated = context.registerInjectActivateService(JacksonExporter.class);
+        assertEquals(0, cache.getEntryCount());
+        exporter.export(new CountingModel(page), String.class, options);
+        reactivated.export(new CountingModel(page), String.class, options);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    void testResourcesWithoutResolverAreNotCached() {
+        Resource resource = new SyntheticResource(null, "/content/page", "type");
+        assertNull(
+                cache.getKey(new CountingModel(resource), String.class, MappingOptions.EMPTY, options, "SHA-256", 0));
+    }
+
+    @Test
+    void testModelsNotImplementingCacheableModelAreNotCached() throws ExportException {
+        exporter.export(new ExamplePojo(), String.class, options);
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    void testResourcesOutsideObservedPathsAreNotCached() throws ExportException {
+        Resource outside = resolver.getResource("/apps/component");
+        exporter.export(new CountingModel(outside), String.class, options);
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    private void assertCachedAfterChangeOf(String path, boolean cached) throws ExportException {
+        exporter.export(new CountingModel(page), String.class, options);
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, path, false)));
+        assertEquals(cached ? 1 : 0, cache.getEntryCount(), path);
+    }
+
+    public static class CountingModel implements CacheableModel {
+
+        private final Resource resource;
+
+        private int calls;
+
+        CountingModel(Resource resource) {
+            this.resource = resource;
+        }
+
+        public String getTitle() {
+            calls++;
+            return resource.getValueMap().get("title", String.class);
+        }
+
+        @Override
+        public Resource getCacheResource() {
+            return resource;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FieldNameCacheTest {
+
+    private final JsonFactory factory =
+            new JsonFactoryBuilder().characterEscapes(JacksonExporter.ESCAPES).build();
+
+    @Test
+    void testSafeNamesAreCached() throws IOException {
+        FieldNameCache underTest = new FieldNameCache(":");
+        assertEquals(
+                "{\":jcr:data\":1,\":jcr:data\":1,\":my-file.bin\":1}",
+                write(factory, underTest, "jcr:data", "jcr:data", "my-file.bin"));
+        assertEquals(2, underTest.size());
+    }
+
+    @Test
+    void testNamesRequiringEscapesAreNotCached() throws IOException {
+        FieldNameCache underTest = new FieldNameCache("");
+        assertEquals(
+                "{\"\\u003Cscript\\u003E\":1,\"a \\\"b\\\"\":1,\"ä\":1}",
+                write(factory, underTest, "<script>", "a \"b\"", "ä"));
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    void testNotUsedWithCustomEscapes() throws IOException {
+        JsonFactory customFactory = new JsonFactoryBuilder()
+                .characterEscapes(new CharacterEscapes() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public int[] getEscapeCodesForAscii() {
+                        int[] escapes = standardAsciiEscapesForJSON();
+                        escapes[':'] = ESCAPE_STANDARD;
+                        return escapes;
+                    }
+
+                    @Override
+                    public SerializableString getEscapeSequence(int ch) {
+                        return null;
+                    }
+                })
+                .build();
+        FieldNameCache underTest = new FieldNameCache("");
+        assertEquals("{\"jcr\\u003Atitle\":1}", write(customFactory, underTest, "jcr:title"));
+        assertEquals(0, underTest.size());
+    }
+
+    @Test
+    void testNumberOfCachedNamesIsBounded() throws IOException {
+        FieldNameCache underTest = new FieldNameCache("");
+        String[] names = new String[FieldNameCache.MAX_CACHED_NAMES + 10];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "property" + i;
+        }
+        write(factory, underTest, names);
+        assertEquals(FieldNameCache.MAX_CACHED_NAMES, underTest.size());
+    }
+
+    private static String write(JsonFactory factory, FieldNameCache cache, String... keys) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator jgen = factory.createGenerator(writer)) {
+            jgen.writeStartObject();
+            for (String key : keys) {
+                cache.writeFieldName(jgen, key);
+                jgen.writeNumber(1);
+            }
+            jgen.writeEndObject();
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@code byte[]} target of {@link JacksonExporter}.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterByteArrayTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private JacksonExporter underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = context.registerInjectActivateService(JacksonExporter.class);
+    }
+
+    @Test
+    void testByteArrayIsSupported() {
+        assertTrue(underTest.isSupported(byte[].class));
+    }
+
+    @Test
+    void testExportIsUtf8EncodedString() throws ExportException {
+        ExamplePojo pojo =
+                new ExamplePojo().stringProp("<script>\u00e4\u20ac</script>").numberProp(5);
+        List<Map<String, String>> optionsList =
+                Arrays.asList(Collections.emptyMap(), Collections.singletonMap("tidy", "true"));
+        for (Map<String, String> options : optionsList) {
+            byte[] bytes = underTest.export(pojo, byte[].class, options);
+            String string = underTest.export(pojo, String.class, options);
+            assertArrayEquals(string.getBytes(StandardCharsets.UTF_8), bytes);
+            assertTrue(string.contains("\\u003Cscript\\u003E"));
+        }
+    }
+
+    @Test
+    void testExportOfSupplementaryCharacters() throws Exception {
+        // the UTF-8 generator may write characters outside of the BMP as escaped surrogate pairs
+        ExamplePojo pojo = new ExamplePojo().stringProp("\ud83d\ude00");
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(
+                mapper.readTree(underTest.export(pojo, String.class, Collections.emptyMap())),
+                mapper.readTree(underTest.export(pojo, byte[].class, Collections.emptyMap())));
+    }
+
+    @Test
+    void testExportOfLargeModel() throws ExportException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            value.append("\u00e4<");
+        }
+        ExamplePojo pojo = new ExamplePojo().stringProp(value.toString());
+        byte[] bytes = underTest.export(pojo, byte[].class, Collections.emptyMap());
+        assertArrayEquals(
+                underTest.export(pojo, String.class, Collections.emptyMap()).getBytes(StandardCharsets.UTF_8), bytes);
+    }
+}
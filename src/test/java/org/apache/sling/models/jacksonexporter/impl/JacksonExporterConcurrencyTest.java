@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that the JSON factory, the escapes and the cached writers shared by all exports of {@link JacksonExporter}
+ * produce identical output under heavy parallel use.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterConcurrencyTest {
+
+    private static final int THREADS = 16;
+
+    private static final int EXPORTS_PER_TASK = 500;
+
+    private OsgiContext context = new OsgiContext();
+
+    @Test
+    void testParallelStringExports() throws Exception {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        List<Map<String, String>> optionVariants = new ArrayList<>();
+        optionVariants.add(Collections.emptyMap());
+        optionVariants.add(Collections.singletonMap("tidy", "true"));
+        optionVariants.add(Collections.singletonMap("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true"));
+
+        List<ExamplePojo> pojos = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ExamplePojo pojo = new ExamplePojo()
+                    .stringProp("<script>alert(" + i + ")</script>" + "x".repeat(i * 100))
+                    .numberProp(i)
+                    .booleanProp(i % 2 == 0);
+            pojos.add(pojo);
+            for (Map<String, String> options : optionVariants) {
+                expected.add(underTest.export(pojo, String.class, options));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS * 2; t++) {
+                final int offset = t;
+                Callable<Integer> task = () -> {
+                    int checked = 0;
+                    for (int i = 0; i < EXPORTS_PER_TASK; i++) {
+                        int index = (offset + i) % expected.size();
+                        ExamplePojo pojo = pojos.get(index / optionVariants.size());
+                        Map<String, String> options = optionVariants.get(index % optionVariants.size());
+                        assertEquals(expected.get(index), underTest.export(pojo, String.class, options));
+                        checked++;
+                    }
+                    return checked;
+                };
+                results.add(executor.submit(task));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(EXPORTS_PER_TASK, result.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the escaping of the script block must not get lost in any of the variants
+        assertTrue(expected.stream().noneMatch(json -> json.contains("<script>")));
+    }
+}
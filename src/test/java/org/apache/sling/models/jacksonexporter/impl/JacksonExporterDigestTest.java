@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.models.jacksonexporter.DigestedExport;
+import org.apache.sling.models.jacksonexporter.ExportDigest;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the digests computed by {@link JacksonExporter} while generating exports.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterDigestTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private Map<String, Object> model = new LinkedHashMap<>();
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    @BeforeEach
+    void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("a\u00e4<\u20ac\ud83d\ude00");
+        }
+        model.put("text", text.toString());
+        model.put("unpaired", "x\ud83dy\ude00z\ud83d");
+        model.put("number", 42);
+    }
+
+    @Test
+    void testDigestedExport() throws Exception {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        assertTrue(underTest.isSupported(DigestedExport.class));
+
+        DigestedExport export = underTest.export(model, DigestedExport.class, options);
+        String content = underTest.export(model, String.class, options);
+        byte[] expected = digest("SHA-256", content.getBytes(StandardCharsets.UTF_8));
+        assertEquals(content, export.getContent());
+        assertEquals("SHA-256", export.getAlgorithm());
+        assertArrayEquals(expected, export.getDigest());
+        assertEquals('"' + Base64.getUrlEncoder().withoutPadding().encodeToString(expected) + '"', export.getETag());
+    }
+
+    @Test
+    void testStreamingExportDigests() throws Exception {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        StreamingExport export = underTest.export(model, StreamingExport.class, options);
+
+        StringWriter writer = new StringWriter();
+        ExportDigest writerDigest = export.writeDigestedTo(writer);
+        assertEquals(underTest.export(model, String.class, options), writer.toString());
+        assertArrayEquals(
+                digest("SHA-256", writer.toString().getBytes(StandardCharsets.UTF_8)), writerDigest.getDigest());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ExportDigest streamDigest = export.writeDigestedTo(outputStream);
+        assertArrayEquals(digest("SHA-256", outputStream.toByteArray()), streamDigest.getDigest());
+    }
+
+    @Test
+    void testConfiguredDigestAlgorithm() throws Exception {
+        JacksonExporter underTest =
+                context.registerInjectActivateService(JacksonExporter.class, "digest.algorithm", "SHA-1");
+        DigestedExport export = underTest.export(model, DigestedExport.class, options);
+        assertEquals("SHA-1", export.getAlgorithm());
+        assertArrayEquals(digest("SHA-1", export.getContent().getBytes(StandardCharsets.UTF_8)), export.getDigest());
+    }
+
+    @Test
+    void testUnavailableDigestAlgorithm() throws Exception {
+        JacksonExporter underTest =
+                context.registerInjectActivateService(JacksonExporter.class, "digest.algorithm", "unknown");
+        assertEquals(
+                "SHA-256",
+                underTest.export(model, DigestedExport.class, options).getAlgorithm());
+    }
+
+    private static byte[] digest(String algorithm, byte[] bytes) throws Exception {
+        return MessageDigest.getInstance(algorithm).digest(bytes);
+    }
+}
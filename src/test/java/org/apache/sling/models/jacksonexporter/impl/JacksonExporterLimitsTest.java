@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the output size, nesting depth, object count and timeout budgets of {@link JacksonExporter}.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterLimitsTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private final Map<String, String> options = Collections.emptyMap();
+
+    /**
+     * Tree of 4 levels with 4 children each: 341 objects, nested 10 levels deep including the arrays.
+     */
+    private final Node model = new Node(4, 4);
+
+    @Test
+    void testNoLimitsByDefault() throws ExportException {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        assertNotNull(underTest.export(model, String.class, options));
+    }
+
+    @Test
+    void testMaxOutputSize() throws ExportException {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        int length = underTest.export(model, String.class, options).length();
+
+        JacksonExporter limited =
+                context.registerInjectActivateService(JacksonExporter.class, "max.output.size", length - 1L);
+        String message = "Export exceeds the maximum output size of " + (length - 1);
+        assertExceeds(message + " characters", () -> limited.export(model, String.class, options));
+        assertExceeds(message + " bytes", () -> limited.export(model, byte[].class, options));
+
+        StreamingExport export = limited.export(model, StreamingExport.class, options);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertExceeds(message + " bytes", () -> export.writeTo(stream));
+        // flushed output cannot be taken back, but the limit is never exceeded
+        assertTrue(stream.size() < length);
+
+        JacksonExporter exact = context.registerInjectActivateService(JacksonExporter.class, "max.output.size", length);
+        assertEquals(length, exact.export(model, String.class, options).length());
+    }
+
+    @Test
+    void testMaxDepth() throws ExportException {
+        JacksonExporter limited = context.registerInjectActivateService(JacksonExporter.class, "max.depth", 9);
+        String message = "Export exceeds the maximum nesting depth of 9";
+        assertExceeds(message, () -> limited.export(model, String.class, options));
+        assertExceeds(message, () -> limited.export(model, Map.class, options));
+        assertExceeds(message, () -> limited.export(model, JsonNode.class, options));
+
+        JacksonExporter exact = context.registerInjectActivateService(JacksonExporter.class, "max.depth", 10);
+        assertNotNull(exact.export(model, String.class, options));
+    }
+
+    @Test
+    void testMaxObjects() throws ExportException {
+        JacksonExporter limited = context.registerInjectActivateService(JacksonExporter.class, "max.objects", 340L);
+        String message = "Export exceeds the maximum number of 340 objects";
+        assertExceeds(message, () -> limited.export(model, String.class, options));
+        assertExceeds(message, () -> limited.export(model, Map.class, options));
+
+        JacksonExporter exact = context.registerInjectActivateService(JacksonExporter.class, "max.objects", 341L);
+        assertNotNull(exact.export(model, Map.class, options));
+    }
+
+    @Test
+    void testTimeout() throws ExportException {
+        JacksonExporter limited = context.registerInjectActivateService(JacksonExporter.class, "timeout", 60L);
+        String message = "Export exceeds the timeout of 60 ms";
+        assertExceeds(message, () -> limited.export(new SlowModel(), String.class, options));
+        assertExceeds(message, () -> limited.export(new SlowModel(), Map.class, options));
+        StreamingExport export = limited.export(new SlowModel(), StreamingExport.class, options);
+        assertExceeds(message, () -> export.writeTo(new ByteArrayOutputStream()));
+
+        // the option may only shorten the configured timeout
+        assertExceeds(
+                message,
+                () -> limited.export(
+                        new SlowModel(), String.class, Collections.singletonMap(ExportLimits.TIMEOUT, "10000")));
+        assertNotNull(limited.export(model, String.class, Collections.singletonMap(ExportLimits.TIMEOUT, "10000")));
+    }
+
+    @Test
+    void testTimeoutOption() throws ExportException {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        assertNotNull(underTest.export(new SlowModel(), String.class, options));
+        assertNotNull(underTest.export(
+                new SlowModel(), String.class, Collections.singletonMap(ExportLimits.TIMEOUT, "invalid")));
+        assertExceeds(
+                "Export exceeds the timeout of 60 ms",
+                () -> underTest.export(
+                        new SlowModel(), String.class, Collections.singletonMap(ExportLimits.TIMEOUT, "60")));
+    }
+
+    private static void assertExceeds(String message, Executable export) {
+        ExportException e = assertThrows(ExportException.class, export);
+        assertEquals(message, e.getMessage());
+    }
+
+    public static class Node {
+
+        private final List<Node> children = new ArrayList<>();
+
+        Node(int depth, int width) {
+            if (depth > 0) {
+                for (int i = 0; i < width; i++) {
+                    children.add(new Node(depth - 1, width));
+                }
+            }
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        public int[] getValues() {
+            return new int[] {1, 2, 3};
+        }
+    }
+
+    public static class SlowModel {
+
+        public String getFirst() throws InterruptedException {
+            Thread.sleep(50);
+            return "first";
+        }
+
+        public String getSecond() throws InterruptedException {
+            Thread.sleep(50);
+            return "second";
+        }
+
+        public String getThird() throws InterruptedException {
+            Thread.sleep(50);
+            return "third";
+        }
+    }
+}
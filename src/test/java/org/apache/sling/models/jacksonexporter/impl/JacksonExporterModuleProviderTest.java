@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.ModuleProvider;
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.osgi.framework.ServiceRegistration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that the cached mappers of {@link JacksonExporter} follow the bound {@link ModuleProvider}s.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterModuleProviderTest {
+
+    private static final String DEFAULT_JSON = "{\"stringProp\":\"value1\",\"numberProp\":1,\"booleanProp\":true}";
+
+    private OsgiContext context = new OsgiContext();
+
+    private ExamplePojo pojo =
+            new ExamplePojo().stringProp("value1").numberProp(1).booleanProp(true);
+
+    private Map<String, String> options = Collections.emptyMap();
+
+    @Test
+    void testModuleProviderBoundAfterActivation() throws ExportException {
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        assertEquals(DEFAULT_JSON, underTest.export(pojo, String.class, options));
+
+        ServiceRegistration<ModuleProvider> registration =
+                context.bundleContext().registerService(ModuleProvider.class, new StringPropModuleProvider(), null);
+        assertEquals("\"value1\"", underTest.export(pojo, String.class, options));
+
+        registration.unregister();
+        assertEquals(DEFAULT_JSON, underTest.export(pojo, String.class, options));
+    }
+
+    @Test
+    void testModuleProviderBoundBeforeActivation() throws ExportException {
+        context.registerService(ModuleProvider.class, new StringPropModuleProvider());
+        JacksonExporter underTest = context.registerInjectActivateService(JacksonExporter.class);
+        assertEquals("\"value1\"", underTest.export(pojo, String.class, options));
+        assertEquals("\"value1\"", underTest.export(pojo, String.class, options));
+    }
+
+    private static class StringPropModuleProvider implements ModuleProvider {
+
+        private final SimpleModule module = new SimpleModule();
+
+        StringPropModuleProvider() {
+            module.addSerializer(ExamplePojo.class, new JsonSerializer<ExamplePojo>() {
+                @Override
+                public void serialize(ExamplePojo value, JsonGenerator jgen, SerializerProvider provider)
+                        throws IOException {
+                    jgen.writeString(value.getStringProp());
+                }
+            });
+        }
+
+        @Override
+        public SimpleModule getModule() {
+            return module;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.StreamingExport;
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link StreamingExport} target of {@link JacksonExporter}.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterStreamingTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private JacksonExporter underTest;
+
+    private ExamplePojo pojo =
+            new ExamplePojo().stringProp("<script>ä</script>").numberProp(1).booleanProp(true);
+
+    @BeforeEach
+    void setUp() {
+        underTest = context.registerInjectActivateService(JacksonExporter.class);
+    }
+
+    @Test
+    void testStreamingExportIsSupported() {
+        assertTrue(underTest.isSupported(StreamingExport.class));
+    }
+
+    @Test
+    void testWriteToWriter() throws ExportException {
+        List<Map<String, String>> optionsList =
+                Arrays.asList(Collections.emptyMap(), Collections.singletonMap("tidy", "true"));
+        for (Map<String, String> options : optionsList) {
+            CloseTrackingWriter writer = new CloseTrackingWriter();
+            underTest.export(pojo, StreamingExport.class, options).writeTo(writer);
+            assertEquals(underTest.export(pojo, String.class, options), writer.toString());
+            assertFalse(writer.closed);
+        }
+    }
+
+    @Test
+    void testWriteToOutputStream() throws ExportException {
+        Map<String, String> options = Collections.singletonMap("tidy", "true");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        underTest.export(pojo, StreamingExport.class, options).writeTo(outputStream);
+        assertEquals(
+                underTest.export(pojo, String.class, options),
+                new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWriteToJsonGenerator() throws Exception {
+        Map<String, String> options = Collections.emptyMap();
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(writer)) {
+            underTest.export(pojo, StreamingExport.class, options).writeTo(generator);
+            // the escapes of the exporter are only applied while writing the model
+            assertNull(generator.getCharacterEscapes());
+        }
+        String expected = underTest.export(pojo, String.class, options);
+        assertEquals(expected, writer.toString());
+        assertTrue(expected.contains("\\u003Cscript\\u003E"));
+    }
+
+    private static class CloseTrackingWriter extends StringWriter {
+
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
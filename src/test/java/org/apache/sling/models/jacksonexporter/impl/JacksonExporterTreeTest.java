@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.jacksonexporter.impl.example.ExamplePojo;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link JsonNode} and {@link TokenBuffer} targets of {@link JacksonExporter}, which are serialized again
+ * with the exporter to compare them with the {@code String} target.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class JacksonExporterTreeTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private JacksonExporter underTest;
+
+    private Map<String, Object> model = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        underTest = context.registerInjectActivateService(JacksonExporter.class);
+        model.put(
+                "pojo", new ExamplePojo().stringProp("</script>").numberProp(3).booleanProp(false));
+        model.put("decimal", new BigDecimal("1.10"));
+        model.put("list", Arrays.asList(1.5f, 2L, null));
+    }
+
+    @Test
+    void testTreeTargetsAreSupported() {
+        assertTrue(underTest.isSupported(JsonNode.class));
+        assertTrue(underTest.isSupported(TokenBuffer.class));
+    }
+
+    @Test
+    void testJsonNodeEqualsString() throws ExportException {
+        for (Map<String, String> options : optionsList()) {
+            JsonNode node = underTest.export(model, JsonNode.class, options);
+            assertEquals(underTest.export(model, String.class, options), underTest.export(node, String.class, options));
+            assertEquals("</script>", node.path("pojo").path("stringProp").asText());
+        }
+    }
+
+    @Test
+    void testTokenBufferEqualsString() throws ExportException {
+        for (Map<String, String> options : optionsList()) {
+            TokenBuffer buffer = underTest.export(model, TokenBuffer.class, options);
+            String expected = underTest.export(model, String.class, options);
+            assertEquals(expected, underTest.export(buffer, String.class, options));
+            // the buffer can be replayed more than once
+            assertEquals(expected, underTest.export(buffer, String.class, options));
+        }
+    }
+
+    private static List<Map<String, String>> optionsList() {
+        return Arrays.asList(
+                Collections.emptyMap(),
+                Collections.singletonMap("tidy", "true"),
+                Collections.singletonMap("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true"));
+    }
+}
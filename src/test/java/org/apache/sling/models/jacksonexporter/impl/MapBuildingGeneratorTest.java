@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Verifies that the {@code Map} export built by {@link MapBuildingGenerator} equals the result of deserializing the
+ * buffered serializer output, including the types of all values.
+ */
+@ExtendWith(OsgiContextExtension.class)
+class MapBuildingGeneratorTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private JacksonExporter underTest;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        underTest = context.registerInjectActivateService(JacksonExporter.class);
+    }
+
+    @Test
+    void testExportEqualsRoundTrip() throws Exception {
+        Map<?, ?> expected = roundTrip(new Model());
+        Map<?, ?> actual = underTest.export(new Model(), Map.class, Collections.emptyMap());
+        assertSameStructure(expected, actual);
+    }
+
+    @Test
+    void testExportEqualsConvertValue() throws Exception {
+        Map<?, ?> expected = mapper.convertValue(new Model(), Map.class);
+        Map<?, ?> actual = underTest.export(new Model(), Map.class, Collections.emptyMap());
+        assertSameStructure(expected, actual);
+    }
+
+    @Test
+    void testRawValueOfCharacters() throws Exception {
+        RawCharactersModel model = new RawCharactersModel();
+        Map<?, ?> actual = underTest.export(model, Map.class, Collections.emptyMap());
+        // raw values are kept raw like the ones written from strings, so the map is written as the same JSON
+        assertEquals(new RawValue("[\"chars\"]"), actual.get("raw"));
+        assertEquals(underTest.export(model, String.class, Collections.emptyMap()), mapper.writeValueAsString(actual));
+    }
+
+    @Test
+    void testExportOfMap() throws Exception {
+        Map<String, Object> model = new LinkedHashMap<>();
+        model.put("b", Arrays.asList(1, "2", null));
+        model.put("a", Collections.singletonMap("nested", 1.5));
+        Map<?, ?> actual = underTest.export(model, Map.class, Collections.emptyMap());
+        assertSameStructure(roundTrip(model), actual);
+    }
+
+    @Test
+    void testExportOfNonObjectModel() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> underTest.export(Arrays.asList(1, 2), Map.class, Collections.emptyMap()));
+    }
+
+    @Test
+    void testExportWithRootValueWrapping() throws ExportException {
+        Map<?, ?> actual = underTest.export(
+                new Model(), Map.class, Collections.singletonMap("SerializationFeature.WRAP_ROOT_VALUE", "true"));
+        assertEquals(3, actual.get("intValue"));
+    }
+
+    @Test
+    void testInvalidGeneratorUsage() throws IOException {
+        MapBuildingGenerator generator = new MapBuildingGenerator(mapper);
+        generator.writeStartObject();
+        assertThrows(IOException.class, () -> generator.writeString("value without name"));
+        assertThrows(IOException.class, generator::writeEndArray);
+        assertEquals(Collections.emptyMap(), generator.getRootValue());
+    }
+
+    private Map<?, ?> roundTrip(Object model) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(buffer, model);
+        return mapper.readValue(buffer.asParser(), Map.class);
+    }
+
+    private static void assertSameStructure(Object expected, Object actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.getClass(), actual.getClass());
+        if (expected instanceof Map) {
+            Map<?, ?> expectedMap = (Map<?, ?>) expected;
+            Map<?, ?> actualMap = (Map<?, ?>) actual;
+            assertEquals(
+                    Arrays.asList(expectedMap.keySet().toArray()),
+                    Arrays.asList(actualMap.keySet().toArray()));
+            for (Map.Entry<?, ?> entry : expectedMap.entrySet()) {
+                assertSameStructure(entry.getValue(), actualMap.get(entry.getKey()));
+            }
+        } else if (expected instanceof List) {
+            List<?> expectedList = (List<?>) expected;
+            List<?> actualList = (List<?>) actual;
+            assertEquals(expectedList.size(), actualList.size());
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertSameStructure(expectedList.get(i), actualList.get(i));
+            }
+        } else if (expected instanceof byte[]) {
+            assertArrayEquals((byte[]) expected, (byte[]) actual);
+        } else {
+            assertEquals(expected, actual);
+        }
+    }
+
+    public static class TextualNumbersSerializer extends JsonSerializer<String> {
+
+        @Override
+        public void serialize(String value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            gen.writeNumber(value);
+            gen.writeNumber("12");
+            gen.writeRawValue("{\"raw\":true}");
+            gen.writeEndArray();
+        }
+    }
+
+    public static class RawCharactersSerializer extends JsonSerializer<String> {
+
+        @Override
+        public void serialize(String value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            char[] raw = ("[" + value + "]").toCharArray();
+            gen.writeRawValue(raw, 1, raw.length - 2);
+        }
+    }
+
+    public static class RawCharactersModel {
+
+        @JsonSerialize(using = RawCharactersSerializer.class)
+        public String raw = "[\"chars\"]";
+    }
+
+    public static class Model {
+
+        public short shortValue = 1;
+
+        public int intValue = 3;
+
+        public long longValue = 4L;
+
+        public float floatValue = 1.25f;
+
+        public double doubleValue = Double.NaN;
+
+        public BigDecimal bigDecimalValue = new BigDecimal("1.10");
+
+        public BigInteger bigIntegerValue = new BigInteger("99999999999999999999");
+
+        public byte[] binaryValue = {1, 2, 3};
+
+        public char[] charsValue = {'a', 'b'};
+
+        public String nullValue = null;
+
+        public Calendar calendarValue = new GregorianCalendar(2020, Calendar.FEBRUARY, 2);
+
+        public List<Object> listValue = Arrays.asList(1, "two", 3.0, Collections.emptyList());
+
+        public Map<Integer, Object> mapValue = Collections.singletonMap(1, Collections.emptyMap());
+
+        public int[] intArrayValue = {1, 2};
+
+        @JsonRawValue
+        public String rawValue = "{\"r\":[1,2]}";
+
+        @JsonSerialize(using = TextualNumbersSerializer.class)
+        public String textualNumbers = "12.50";
+    }
+}
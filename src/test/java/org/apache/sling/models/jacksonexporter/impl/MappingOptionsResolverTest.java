@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.qos.logback.classic.Level;
+import org.apache.sling.models.jacksonexporter.impl.util.LogCapture;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappingOptionsResolverTest {
+
+    @Test
+    void testEmptyOptionsResolveToConfiguredOptions() {
+        MappingOptionsResolver underTest = new MappingOptionsResolver(
+                Collections.singletonMap("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true"));
+        assertSame(underTest.getConfiguredOptions(), underTest.resolve(Collections.emptyMap()));
+        assertNotEquals(MappingOptions.EMPTY, underTest.getConfiguredOptions());
+    }
+
+    @Test
+    void testResolvedOptionsAreCached() {
+        MappingOptionsResolver underTest = new MappingOptionsResolver(Collections.emptyMap());
+        Map<String, String> options = new HashMap<>();
+        options.put("SerializationFeature.INDENT_OUTPUT", "true");
+        options.put("unrelated", "value");
+        assertSame(underTest.resolve(options), underTest.resolve(new HashMap<>(options)));
+    }
+
+    @Test
+    void testOtherOptionsDoNotFillCache() {
+        MappingOptionsResolver underTest = new MappingOptionsResolver(Collections.emptyMap());
+        Map<String, String> options = new HashMap<>();
+        options.put("SerializationFeature.INDENT_OUTPUT", "true");
+        MappingOptions resolved = underTest.resolve(options);
+        // e.g. cache busting request parameters
+        for (int i = 0; i < MappingOptionsResolver.MAX_CACHED_OPTIONS * 2; i++) {
+            options.put("unrelated", Integer.toString(i));
+            assertSame(resolved, underTest.resolve(options));
+        }
+        options.put("SerializationFeature.INDENT_OUTPUT", "TRUE");
+        assertSame(resolved, underTest.resolve(options));
+        assertSame(underTest.getConfiguredOptions(), underTest.resolve(Collections.singletonMap("unrelated", "x")));
+    }
+
+    @Test
+    void testPassedInOptionsOverrideConfiguredOptions() {
+        Map<String, String> configured = new HashMap<>();
+        configured.put("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true");
+        configured.put("tidy", "true");
+        MappingOptionsResolver underTest = new MappingOptionsResolver(configured);
+
+        Map<String, String> options = new HashMap<>();
+        options.put("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "false");
+        options.put("tidy", "false");
+        MappingOptions resolved = underTest.resolve(options);
+        assertFalse(resolved.isTidy());
+        assertEquals(new MappingOptionsResolver(options).getConfiguredOptions(), resolved);
+
+        assertTrue(underTest.resolve(Collections.singletonMap("other", "true")).isTidy());
+    }
+
+    @Test
+    void testBadOptionIsReportedOnce() {
+        LogCapture capture = new LogCapture(JacksonExporter.class.getName(), false);
+        MappingOptionsResolver underTest = new MappingOptionsResolver(Collections.emptyMap());
+        for (int i = 0; i < 3; i++) {
+            Map<String, String> options = new HashMap<>();
+            options.put("SerializationFeature.NO_SUCH_FEATURE", "true");
+            options.put("round", Integer.toString(i));
+            underTest.resolve(options);
+        }
+        assertEquals(
+                1,
+                capture.list.stream()
+                        .filter(event -> event.getLevel().equals(Level.WARN)
+                                && event.getFormattedMessage()
+                                        .equals("Bad SerializationFeature option: NO_SUCH_FEATURE"))
+                        .count());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectMapperCacheTest {
+
+    private ObjectMapperCache underTest = new ObjectMapperCache(1, new ArrayList<>());
+
+    private MappingOptionsResolver resolver = new MappingOptionsResolver(Collections.emptyMap());
+
+    @Test
+    void testMapperIsReusedForSameOptions() {
+        Map<String, String> options = Collections.singletonMap("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true");
+        ObjectMapper mapper = underTest.getMapper(resolver.resolve(options));
+        assertTrue(mapper.isEnabled(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY));
+        assertSame(mapper, underTest.getMapper(resolver.resolve(new HashMap<>(options))));
+    }
+
+    @Test
+    void testNonFeatureOptionsDoNotAffectMapper() {
+        Map<String, String> options = new HashMap<>();
+        options.put("tidy", "true");
+        options.put("someParameter", "value");
+        assertSame(getMapper(Collections.emptyMap()), getMapper(options));
+    }
+
+    @Test
+    void testDifferentOptionsUseDifferentMappers() {
+        ObjectMapper sorted =
+                getMapper(Collections.singletonMap("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "true"));
+        ObjectMapper unsorted =
+                getMapper(Collections.singletonMap("MapperFeature.SORT_PROPERTIES_ALPHABETICALLY", "false"));
+        assertNotSame(sorted, unsorted);
+        assertFalse(unsorted.isEnabled(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY));
+    }
+
+    @Test
+    void testWriterOptionsShareMapper() {
+        Map<String, String> options = new HashMap<>();
+        options.put("SerializationFeature.INDENT_OUTPUT", "true");
+        options.put("SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS", "true");
+        options.put("tidy", "true");
+        assertSame(getMapper(Collections.emptyMap()), getMapper(options));
+
+        ObjectWriter writer = getWriter(options);
+        assertTrue(writer.isEnabled(SerializationFeature.INDENT_OUTPUT));
+        assertTrue(writer.isEnabled(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS));
+        assertSame(writer, getWriter(new HashMap<>(options)));
+        assertNotSame(writer, getWriter(Collections.emptyMap()));
+    }
+
+    @Test
+    void testWriterDisablesFeature() {
+        ObjectWriter writer = getWriter(Collections.singletonMap("SerializationFeature.FAIL_ON_EMPTY_BEANS", "false"));
+        assertFalse(writer.isEnabled(SerializationFeature.FAIL_ON_EMPTY_BEANS));
+    }
+
+    @Test
+    void testMapperCacheIsBounded() {
+        for (MapperFeature feature : MapperFeature.values()) {
+            assertNotNull(getMapper(Collections.singletonMap("MapperFeature." + feature.name(), "true")));
+        }
+        Map<String, String> options = Collections.singletonMap("MapperFeature.USE_ANNOTATIONS", "false");
+        assertNotSame(getMapper(options), getMapper(options));
+    }
+
+    @Test
+    void testWriterCacheIsBounded() {
+        // pairs of enabled features, which are more distinct options than writers are cached
+        SerializationFeature[] features = SerializationFeature.values();
+        int writers = 0;
+        for (int i = 0; i < features.length && writers < ObjectMapperCache.MAX_CACHED_WRITERS; i++) {
+            for (int j = i + 1; j < features.length && writers < ObjectMapperCache.MAX_CACHED_WRITERS; j++) {
+                Map<String, String> options = new HashMap<>();
+                options.put("SerializationFeature." + features[i].name(), "true");
+                options.put("SerializationFeature." + features[j].name(), "true");
+                assertNotNull(getWriter(options));
+                writers++;
+            }
+        }
+        Map<String, String> options = Collections.singletonMap("SerializationFeature.INDENT_OUTPUT", "false");
+        assertNotSame(getWriter(options), getWriter(options));
+    }
+
+    @Test
+    void testExportWritersAreReusedForSameOptions() {
+        Map<String, String> options = new HashMap<>();
+        options.put("SerializationFeature.WRAP_ROOT_VALUE", "true");
+        options.put("tidy", "true");
+        options.put("resource.childLimit", "10");
+        Map<String, String> serializerOptions = Collections.singletonMap("resource.childLimit", "10");
+        ObjectWriter writer = underTest.getWriter(resolver.resolve(options), options, false);
+        assertEquals(serializerOptions, writer.getAttributes().getAttribute(JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE));
+        assertTrue(writer.isEnabled(SerializationFeature.WRAP_ROOT_VALUE));
+        assertSame(writer, underTest.getWriter(resolver.resolve(options), new HashMap<>(options), false));
+
+        ObjectWriter unwrapped = underTest.getWriter(resolver.resolve(options), options, true);
+        assertFalse(unwrapped.isEnabled(SerializationFeature.WRAP_ROOT_VALUE));
+        assertEquals(
+                serializerOptions, unwrapped.getAttributes().getAttribute(JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE));
+        assertSame(unwrapped, underTest.getWriter(resolver.resolve(options), new HashMap<>(options), true));
+    }
+
+    @Test
+    void testOtherOptionsDoNotFillWriterCache() {
+        Map<String, String> options = new HashMap<>();
+        options.put("resource.childLimit", "10");
+        ObjectWriter writer = underTest.getWriter(resolver.resolve(options), options, false);
+        for (int i = 0; i < 100; i++) {
+            options.put("param" + i, "value");
+            assertSame(writer, underTest.getWriter(resolver.resolve(options), options, false));
+        }
+    }
+
+    @Test
+    void testExportWriterWithoutOptionsIsCachedWriter() {
+        Map<String, String> options = Collections.emptyMap();
+        assertSame(getWriter(options), underTest.getWriter(resolver.resolve(options), options, false));
+        options = Collections.singletonMap("tidy", "false");
+        ObjectWriter writer = underTest.getWriter(resolver.resolve(options), options, false);
+        assertSame(getWriter(options), writer);
+        assertNull(writer.getAttributes().getAttribute(JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE));
+    }
+
+    private ObjectMapper getMapper(Map<String, String> options) {
+        return underTest.getMapper(resolver.resolve(options));
+    }
+
+    private ObjectWriter getWriter(Map<String, String> options) {
+        return underTest.getWriter(resolver.resolve(options));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PropertyFilterTest {
+
+    @Test
+    void testNoPatterns() {
+        assertSame(PropertyFilter.ACCEPT_ALL, PropertyFilter.create(null, null, null));
+        assertSame(PropertyFilter.ACCEPT_ALL, PropertyFilter.create(new String[] {" "}, new String[0], null));
+        assertTrue(PropertyFilter.ACCEPT_ALL.accept("jcr:created"));
+    }
+
+    @Test
+    void testExcludes() {
+        PropertyFilter underTest =
+                PropertyFilter.create(null, new String[] {"jcr:created", "rep:*", "*:lastModifiedBy", "a*b*c"}, null);
+        assertFalse(underTest.accept("jcr:created"));
+        assertTrue(underTest.accept("jcr:createdBy"));
+        assertFalse(underTest.accept("rep:policy"));
+        assertFalse(underTest.accept("rep:"));
+        assertTrue(underTest.accept("xrep:policy"));
+        assertFalse(underTest.accept("cq:lastModifiedBy"));
+        assertTrue(underTest.accept("cq:lastModifiedByMe"));
+        assertFalse(underTest.accept("abc"));
+        assertFalse(underTest.accept("a.b.c"));
+        assertTrue(underTest.accept("a.c.b"));
+        // decisions are cached
+        assertFalse(underTest.accept("jcr:created"));
+        assertTrue(underTest.accept("jcr:createdBy"));
+    }
+
+    @Test
+    void testIncludes() {
+        PropertyFilter underTest = PropertyFilter.create(new String[] {"jcr:title", "sling:*"}, new String[0], null);
+        assertTrue(underTest.accept("jcr:title"));
+        assertTrue(underTest.accept("sling:resourceType"));
+        assertFalse(underTest.accept("jcr:created"));
+    }
+
+    @Test
+    void testRegexCharactersAreLiterals() {
+        PropertyFilter underTest = PropertyFilter.create(null, new String[] {"a.b*", "*(x)", "[y]*z"}, null);
+        assertFalse(underTest.accept("a.bc"));
+        assertTrue(underTest.accept("axbc"));
+        assertFalse(underTest.accept("1(x)"));
+        assertTrue(underTest.accept("1x"));
+        assertFalse(underTest.accept("[y]z"));
+        assertTrue(underTest.accept("yz"));
+    }
+
+    @Test
+    void testParent() {
+        PropertyFilter parent = PropertyFilter.create(null, new String[] {"rep:*"}, null);
+        PropertyFilter underTest = PropertyFilter.create(new String[] {"rep:*", "jcr:*"}, null, parent);
+        assertFalse(underTest.accept("rep:policy"));
+        assertTrue(underTest.accept("jcr:title"));
+        assertFalse(underTest.accept("title"));
+        assertSame(parent, PropertyFilter.create(null, null, parent));
+    }
+
+    @Test
+    void testEquality() {
+        PropertyFilter parent = PropertyFilter.create(null, new String[] {"rep:*"}, null);
+        String[] includes = {"jcr:title", "sling:*", "*:lastModified*"};
+        PropertyFilter underTest = PropertyFilter.create(includes, null, parent);
+        PropertyFilter same = PropertyFilter.create(includes.clone(), null, parent);
+        assertEquals(underTest, same);
+        assertEquals(underTest.hashCode(), same.hashCode());
+        assertNotEquals(underTest, PropertyFilter.create(includes, null, null));
+        assertNotEquals(underTest, PropertyFilter.create(null, includes, parent));
+        assertNotEquals(underTest, PropertyFilter.create(new String[] {"jcr:title"}, null, parent));
+        assertNotEquals(PropertyFilter.ACCEPT_ALL, underTest);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.util.Collections;
+
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.apache.sling.testing.resourceresolver.MockHelper;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(OsgiContextExtension.class)
+class ResourceFragmentCacheTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private ResourceResolver resolver;
+
+    private ResourceFragmentCache cache;
+
+    private Resource page;
+
+    @BeforeEach
+    void setUp() throws LoginException, PersistenceException {
+        cache = context.registerInjectActivateService(
+                ResourceFragmentCache.class, "resource.paths", new String[] {"/content"});
+        resolver = new MockResourceResolverFactory().getResourceResolver(null);
+        MockHelper.create(resolver)
+                .resource("/content")
+                .resource("/content/page")
+                .p("title", "Page </script>")
+                .resource("/content/page/child")
+                .p("index", 1)
+                .resource("/content/page/child/grandchild")
+                .p("index", 2)
+                .commit();
+        page = resolver.getResource("/content/page");
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.close();
+    }
+
+    @Test
+    void testSubtreeIsSplicedFromCache() throws Exception {
+        String expected = write(new ResourceSerializer(-1), page);
+        ResourceSerializer serializer = cached(-1);
+        assertEquals(expected, write(serializer, page));
+        assertEquals(expected, write(serializer, page));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    void testSettingsAreCachedSeparately() throws Exception {
+        write(cached(-1), page);
+        assertEquals(write(new ResourceSerializer(1), page), write(cached(1), page));
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void testInvalidationByResourceChanges() throws Exception {
+        assertCachedAfterChangeOf("/content/other", true);
+        assertCachedAfterChangeOf("/content/page", false);
+        assertCachedAfterChangeOf("/content/page/child/grandchild", false);
+        assertCachedAfterChangeOf("/content", false);
+    }
+
+    @Test
+    void testChangedSubtreeIsSerializedAgain() throws Exception {
+        ResourceSerializer serializer = cached(-1);
+        write(serializer, page);
+        Resource grandchild = resolver.getResource("/content/page/child/grandchild");
+        grandchild.adaptTo(ModifiableValueMap.class).put("index", 3);
+        resolver.commit();
+        cache.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/page/child/grandchild", false)));
+        assertEquals(write(new ResourceSerializer(-1), page), write(serializer, page));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void testOnlyOutermostObservedResourceIsCached() throws Exception {
+        cache = context.registerInjectActivateService(
+                ResourceFragmentCache.class, "resource.paths", new String[] {"/content/page/child"});
+        ResourceSerializer serializer = cached(-1);
+        String expected = write(new ResourceSerializer(-1), page);
+        assertEquals(expected, write(serializer, page));
+        assertEquals(expected, write(serializer, page));
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void testFragmentsExceedingMaximumSizeAreNotCached() throws Exception {
+        cache = context.registerInjectActivateService(
+                ResourceFragmentCache.class, "max.size", 200L, "resource.paths", new String[] {"/content"});
+        assertEquals(write(new ResourceSerializer(-1), page), write(cached(-1), page));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    void testPrettyPrintedOutputIsNotCached() throws Exception {
+        ObjectWriter writer = mapper(cached(-1)).writerWithDefaultPrettyPrinter();
+        assertEquals(
+                mapper(new ResourceSerializer(-1))
+                        .writerWithDefaultPrettyPrinter()
+                        .writeValueAsString(page),
+                writer.writeValueAsString(page));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    void testFragmentsAreCachedPerGeneratorKind() throws Exception {
+        // characters outside the basic multilingual plane are escaped by the UTF-8 generators only
+        MockHelper.create(resolver)
+                .resource("/content/emoji")
+                .p("title", "Smile \uD83D\uDE00")
+                .resource("/content/emoji/child")
+                .p("index", 1)
+                .commit();
+        Resource emoji = resolver.getResource("/content/emoji");
+        ObjectMapper uncached = mapper(new ResourceSerializer(-1));
+        ObjectMapper mapper = mapper(cached(-1));
+        byte[] expected = uncached.writeValueAsBytes(emoji);
+        assertArrayEquals(expected, mapper.writeValueAsBytes(emoji));
+        assertArrayEquals(expected, mapper.writeValueAsBytes(emoji));
+        assertEquals(uncached.writeValueAsString(emoji), mapper.writeValueAsString(emoji));
+        assertEquals(uncached.writeValueAsString(emoji), mapper.writeValueAsString(emoji));
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    void testFiltersOfExportsShareFragments() throws Exception {
+        ObjectMapper mapper = mapper(cached(-1));
+        // fills the cache of property filters of the serializer
+        for (int i = 0; i < ResourceSerializer.MAX_CACHED_FILTERS; i++) {
+            write(mapper, "p" + i);
+        }
+        long entries = cache.getEntryCount();
+        String expected = write(mapper(new ResourceSerializer(-1)), "title");
+        assertEquals(expected, write(mapper, "title"));
+        assertEquals(expected, write(mapper, "title"));
+        assertEquals(entries + 1, cache.getEntryCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    private String write(ObjectMapper mapper, String includes) throws Exception {
+        return mapper.writer()
+                .withAttribute(
+                        JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE,
+                        Collections.singletonMap(ResourceSerializer.INCLUDE_PROPERTIES, includes))
+                .writeValueAsString(page);
+    }
+
+    private void assertCachedAfterChangeOf(String path, boolean cached) throws Exception {
+        write(cached(-1), page);
+        cache.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, path, false)));
+        assertEquals(cached ? 1 : 0, cache.getEntryCount(), path);
+    }
+
+    private ResourceSerializer cached(int maxRecursionLevels) {
+        ResourceFragmentCache fragments = cache;
+        return new ResourceSerializer(maxRecursionLevels, -1, PropertyFilter.ACCEPT_ALL, null, 0, () -> fragments);
+    }
+
+    private static String write(ResourceSerializer serializer, Resource resource) throws Exception {
+        return mapper(serializer).writeValueAsString(resource);
+    }
+
+    private static ObjectMapper mapper(ResourceSerializer serializer) {
+        // the generators of the exporter, whose escapes the fragments are written with
+        ObjectMapper mapper = new ObjectMapper(new JsonFactoryBuilder()
+                .characterEscapes(JacksonExporter.ESCAPES)
+                .build());
+        mapper.registerModule(new SimpleModule().addSerializer(Resource.class, serializer));
+        return mapper;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ResourceResolverWrapper;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.testing.resourceresolver.MockHelper;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResourceSerializerParallelTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final AtomicInteger clones = new AtomicInteger();
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private final MockResourceResolverFactory factory = new MockResourceResolverFactory();
+
+    private ResourceResolver resolver;
+
+    private Resource root;
+
+    @BeforeEach
+    void setUp() throws LoginException, PersistenceException {
+        resolver = factory.getResourceResolver(null);
+        Calendar created = new GregorianCalendar(2024, Calendar.JANUARY, 1);
+        MockHelper helper = MockHelper.create(resolver)
+                .resource("/content")
+                .resource("/content/test")
+                .p("title", "Test");
+        for (int i = 0; i < 4; i++) {
+            helper.resource("/content/test/child" + i).p("index", i).p("created", created);
+            for (int j = 0; j < 3; j++) {
+                helper.resource("/content/test/child" + i + "/grandchild" + j)
+                        .p("index", j)
+                        .p("ratio", 0.5);
+            }
+        }
+        // the subtrees are read with clones of the resource resolver
+        helper.resource("/content/test/leaf").p("index", 4).commit();
+        root = new CloningResolver(resolver).getResource("/content/test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        resolver.close();
+    }
+
+    @Test
+    void testSameOutputAsSerial() throws Exception {
+        String serial = write(new ResourceSerializer(-1));
+        assertEquals(serial, write(parallel(2)));
+        // below the threshold
+        assertEquals(serial, write(parallel(5)));
+    }
+
+    @Test
+    void testWrappedChildrenAreSerializedSerially() throws Exception {
+        root = new DecoratedResource(root);
+        String serial = write(new ResourceSerializer(-1));
+        assertTrue(serial.contains("\"grandchild0\":{\"decorated\":true"), serial);
+        assertEquals(serial, write(parallel(2)));
+        assertEquals(0, clones.get());
+    }
+
+    @Test
+    void testSubtreesUseSerializerFactoryOfMapper() throws Exception {
+        ObjectMapper mapper = mapper(parallel(2));
+        // the calendar serializer looks up the date serializer through the provider of the subtree
+        mapper.registerModule(new SimpleModule()
+                .addSerializer(Calendar.class, new StdSerializer<Calendar>(Calendar.class) {
+                    @Override
+                    public void serialize(Calendar value, JsonGenerator gen, SerializerProvider provider)
+                            throws IOException {
+                        provider.findValueSerializer(Date.class).serialize(value.getTime(), gen, provider);
+                    }
+                })
+                .addSerializer(Date.class, new StdSerializer<Date>(Date.class) {
+                    @Override
+                    public void serialize(Date value, JsonGenerator gen, SerializerProvider provider)
+                            throws IOException {
+                        gen.writeString("date");
+                    }
+                }));
+        ObjectWriter writer = mapper.writer()
+                .withAttribute(JacksonExporter.SERIALIZER_FACTORY_ATTRIBUTE, mapper.getSerializerFactory());
+        String output = writer.writeValueAsString(root);
+        assertTrue(output.contains("\"child3\":{\"created\":\"date\""), output);
+        assertTrue(clones.get() > 0);
+    }
+
+    @Test
+    void testSameOutputWithLimits() throws Exception {
+        assertEquals(
+                write(new ResourceSerializer(2, 2)),
+                write(new ResourceSerializer(2, 2, PropertyFilter.ACCEPT_ALL, executor, 2, () -> null)));
+    }
+
+    @Test
+    void testShutDownExecutor() throws Exception {
+        executor.shutdown();
+        // the subtrees are serialized on the calling thread
+        assertEquals(write(new ResourceSerializer(-1)), write(parallel(2)));
+        assertEquals(0, clones.get());
+    }
+
+    @Test
+    void testResolverClonesAreReusedAndClosed() throws Exception {
+        write(parallel(2));
+        // at most one clone for each thread of the executor
+        assertTrue(clones.get() <= 2);
+        assertEquals(clones.get(), closed.get());
+    }
+
+    @Test
+    void testSameOutputWithinBudgets() throws Exception {
+        ExportLimits limits = new ExportLimits(10000, 3, 18, 10000);
+        assertEquals(write(new ResourceSerializer(-1), limits), write(parallel(2), limits));
+    }
+
+    @Test
+    void testBudgetsAreEnforcedOnSubtrees() {
+        // 1 + 4 + 12 + 1 objects nested 3 levels deep
+        assertExceeds("Export exceeds the maximum number of 17 objects", new ExportLimits(-1, -1, 17, -1));
+        assertExceeds("Export exceeds the maximum nesting depth of 2", new ExportLimits(-1, 2, -1, -1));
+        assertExceeds("Export exceeds the maximum output size of 100 characters", new ExportLimits(100, -1, -1, -1));
+    }
+
+    private void assertExceeds(String message, ExportLimits limits) {
+        ExportLimitExceededException e =
+                assertThrows(ExportLimitExceededException.class, () -> write(parallel(2), limits));
+        assertEquals(message, e.getMessage());
+    }
+
+    private ResourceSerializer parallel(int threshold) {
+        return new ResourceSerializer(-1, -1, PropertyFilter.ACCEPT_ALL, executor, threshold, () -> null);
+    }
+
+    private String write(ResourceSerializer serializer) throws Exception {
+        return mapper(serializer).writeValueAsString(root);
+    }
+
+    private String write(ResourceSerializer serializer, ExportLimits limits) throws Exception {
+        ObjectMapper mapper = mapper(serializer);
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = limits.limit(mapper.getFactory().createGenerator(writer))) {
+            mapper.writeValue(generator, root);
+        }
+        return writer.toString();
+    }
+
+    private static ObjectMapper mapper(ResourceSerializer serializer) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new SimpleModule().addSerializer(Resource.class, serializer));
+        return mapper;
+    }
+
+    /**
+     * Adds a property to the wrapped resource and its descendants, which their resolver does not return.
+     */
+    private static class DecoratedResource extends ResourceWrapper {
+
+        DecoratedResource(Resource resource) {
+            super(resource);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A adaptTo(Class<A> type) {
+            if (type == ValueMap.class) {
+                Map<String, Object> properties = new LinkedHashMap<>();
+                properties.put("decorated", true);
+                properties.putAll(getResource().getValueMap());
+                return (A) new ValueMapDecorator(properties);
+            }
+            return super.adaptTo(type);
+        }
+
+        @Override
+        public Iterable<Resource> getChildren() {
+            List<Resource> children = new ArrayList<>();
+            for (Resource child : getResource().getChildren()) {
+                children.add(new DecoratedResource(child));
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Returns its resources and their children as resources of its own class, like a resolver implementation.
+     */
+    private static class WrappingResolver extends ResourceResolverWrapper {
+
+        private final ResourceResolver resolver;
+
+        WrappingResolver(ResourceResolver resolver) {
+            super(resolver);
+            this.resolver = resolver;
+        }
+
+        @Override
+        public Resource getResource(String path) {
+            Resource resource = resolver.getResource(path);
+            return resource != null ? new ResolverResource(resource, this) : null;
+        }
+    }
+
+    private static class ResolverResource extends ResourceWrapper {
+
+        private final ResourceResolver resolver;
+
+        ResolverResource(Resource resource, ResourceResolver resolver) {
+            super(resource);
+            this.resolver = resolver;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return resolver;
+        }
+
+        @Override
+        public Iterable<Resource> getChildren() {
+            List<Resource> children = new ArrayList<>();
+            for (Resource child : getResource().getChildren()) {
+                children.add(new ResolverResource(child, resolver));
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Counts the clones of the wrapped resolver and how many of them were closed. The mock resolvers cannot be cloned,
+     * but the resolvers of the factory share the committed resources.
+     */
+    private class CloningResolver extends WrappingResolver {
+
+        CloningResolver(ResourceResolver resolver) {
+            super(resolver);
+        }
+
+        @Override
+        public ResourceResolver clone(Map<String, Object> authenticationInfo) throws LoginException {
+            clones.incrementAndGet();
+            return new WrappingResolver(factory.getResourceResolver(authenticationInfo)) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                    super.close();
+                }
+            };
+        }
+    }
+}
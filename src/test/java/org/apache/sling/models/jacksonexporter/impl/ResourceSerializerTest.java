@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.models.jacksonexporter.impl;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContext;
+import org.apache.sling.testing.mock.osgi.junit5.OsgiContextExtension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(OsgiContextExtension.class)
+class ResourceSerializerTest {
+
+    private OsgiContext context = new OsgiContext();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Object> properties = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        mapper.registerModule(new SimpleModule().addSerializer(Resource.class, new ResourceSerializer(-1)));
+    }
+
+    @Test
+    void testMultiValueProperties() throws Exception {
+        properties.put("strings", new String[] {"a", null, "b"});
+        properties.put("longs", new long[] {1, Long.MAX_VALUE});
+        properties.put("ints", new int[] {1, -2});
+        properties.put("doubles", new double[] {1.5, -0.25});
+        properties.put("booleans", new boolean[] {true, false});
+        properties.put("boxedLongs", new Long[] {1L, null});
+        properties.put("boxedInts", new Integer[] {3, null});
+        properties.put("boxedDoubles", new Double[] {2.5, null});
+        properties.put("boxedBooleans", new Boolean[] {false, null});
+        properties.put("floats", new float[] {1.5f});
+        properties.put("objects", new Object[] {1, "x", null, true});
+        properties.put("empty", new long[0]);
+        assertEquals(
+                "{\"strings\":[\"a\",\"\",\"b\"],\"longs\":[1,9223372036854775807],\"ints\":[1,-2],"
+                        + "\"doubles\":[1.5,-0.25],\"booleans\":[true,false],\"boxedLongs\":[1,\"\"],"
+                        + "\"boxedInts\":[3,\"\"],\"boxedDoubles\":[2.5,\"\"],\"boxedBooleans\":[false,\"\"],"
+                        + "\"floats\":[\"1.5\"],\"objects\":[1,\"x\",\"\",true],\"empty\":[]}",
+                mapper.writeValueAsString(new TestResource("/content/test", properties)));
+    }
+
+    @Test
+    void testBinaryProperties() throws Exception {
+        properties.put("single", 5L);
+        properties.put("jcr:data", new ByteArrayInputStream(new byte[3]));
+        assertEquals(
+                "{\"single\":5,\":jcr:data\":-1}",
+                mapper.writeValueAsString(new TestResource("/content/test", properties)));
+    }
+
+    @Test
+    void testBinaryLengthFromMetadata() throws Exception {
+        Map<String, Object> binaryProperties = new LinkedHashMap<String, Object>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Object get(Object key) {
+                if ("jcr:data".equals(key)) {
+                    throw new AssertionError("binary must not be opened");
+                }
+                return super.get(key);
+            }
+        };
+        binaryProperties.put("jcr:primaryType", "nt:resource");
+        binaryProperties.put("jcr:data", new ByteArrayInputStream(new byte[3]));
+        binaryProperties.put("jcr:mimeType", "image/png");
+        TestResource resource = new TestResource("/content/test/jcr:content", binaryProperties);
+        resource.getResourceMetadata().setContentLength(1234);
+        assertEquals(
+                "{\"jcr:primaryType\":\"nt:resource\",\":jcr:data\":1234,\"jcr:mimeType\":\"image/png\"}",
+                mapper.writeValueAsString(resource));
+    }
+
+    @Test
+    void testNonBinaryDataWithContentLength() throws Exception {
+        properties.put("jcr:primaryType", "nt:unstructured");
+        properties.put("jcr:data", "text");
+        TestResource resource = new TestResource("/content/test", properties);
+        resource.getResourceMetadata().setContentLength(1234);
+        assertEquals(
+                "{\"jcr:primaryType\":\"nt:unstructured\",\"jcr:data\":\"text\"}", mapper.writeValueAsString(resource));
+    }
+
+    @Test
+    void testChildren() throws Exception {
+        TestResource root = new TestResource("/content/test", Collections.singletonMap("level", 0));
+        TestResource child =
+                root.addChild(new TestResource("/content/test/child", Collections.singletonMap("level", 1)));
+        child.addChild(new TestResource("/content/test/child/grandchild", Collections.singletonMap("level", 2)));
+        root.addChild(new TestResource("/content/test/sibling", Collections.emptyMap()));
+        assertEquals(
+                "{\"level\":0,\"child\":{\"level\":1,\"grandchild\":{\"level\":2}},\"sibling\":{}}",
+                mapper.writeValueAsString(root));
+        assertEquals("{\"level\":0}", write(root, 0));
+        assertEquals("{\"level\":0,\"child\":{\"level\":1},\"sibling\":{}}", write(root, 1));
+    }
+
+    @Test
+    void testMaxRecursionLevelsOption() throws Exception {
+        TestResource root = new TestResource("/content/test", Collections.singletonMap("level", 0));
+        TestResource child =
+                root.addChild(new TestResource("/content/test/child", Collections.singletonMap("level", 1)));
+        child.addChild(new TestResource("/content/test/child/grandchild", Collections.singletonMap("level", 2)));
+        assertEquals("{\"level\":0}", write(root, new ResourceSerializer(-1), recursionLevels("0")));
+        assertEquals(
+                "{\"level\":0,\"child\":{\"level\":1}}", write(root, new ResourceSerializer(-1), recursionLevels("1")));
+        // the configured maximum is a ceiling
+        assertEquals(
+                "{\"level\":0,\"child\":{\"level\":1}}", write(root, new ResourceSerializer(1), recursionLevels("5")));
+        assertEquals(
+                "{\"level\":0,\"child\":{\"level\":1}}", write(root, new ResourceSerializer(1), recursionLevels("-1")));
+    }
+
+    @Test
+    void testDeepTree() throws Exception {
+        int depth = 10_000;
+        TestResource root = new TestResource("/content/test", Collections.singletonMap("level", 0));
+        TestResource resource = root;
+        for (int level = 1; level <= depth; level++) {
+            // the paths are not nested to keep the memory footprint of the tree linear
+            resource = resource.addChild(new TestResource("/content/child", Collections.singletonMap("level", level)));
+        }
+        // exported like in production, the default nesting depth constraint of Jackson is much lower than the depth
+        context.registerInjectActivateService(ResourceModuleProvider.class);
+        JacksonExporter exporter = context.registerInjectActivateService(JacksonExporter.class);
+
+        // the traversal must not depend on the stack size, so run it on a thread with a small stack
+        AtomicReference<String> json = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(
+                null,
+                () -> {
+                    try {
+                        json.set(exporter.export(root, String.class, Collections.emptyMap()));
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                },
+                "deep-tree",
+                256 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(failure.get());
+
+        StringBuilder expected = new StringBuilder("{\"level\":0");
+        for (int level = 1; level <= depth; level++) {
+            expected.append(",\"child\":{\"level\":").append(level);
+        }
+        for (int level = 0; level <= depth; level++) {
+            expected.append('}');
+        }
+        assertEquals(expected.toString(), json.get());
+
+        // a configured maximum depth still applies
+        JacksonExporter limited = context.registerInjectActivateService(JacksonExporter.class, "max.depth", 2000);
+        ExportException e =
+                assertThrows(ExportException.class, () -> limited.export(root, String.class, Collections.emptyMap()));
+        assertEquals("Export exceeds the maximum nesting depth of 2000", e.getMessage());
+    }
+
+    @Test
+    void testMaxChildren() throws Exception {
+        TestResource root = createFolder(4);
+        ResourceSerializer serializer = new ResourceSerializer(-1, 2);
+        assertEquals(
+                "{\"level\":0,\"c0\":{},\"c1\":{},\":nextChildOffset\":2}",
+                write(root, serializer, Collections.emptyMap()));
+        // the option may only lower the configured maximum
+        assertEquals(
+                "{\"level\":0,\"c0\":{},\":nextChildOffset\":1}",
+                write(root, serializer, Collections.singletonMap(ResourceSerializer.CHILD_LIMIT, "1")));
+        assertEquals(
+                "{\"level\":0,\"c0\":{},\"c1\":{},\":nextChildOffset\":2}",
+                write(root, serializer, Collections.singletonMap(ResourceSerializer.CHILD_LIMIT, "3")));
+        // no marker if all children fit
+        assertEquals(
+                "{\"level\":0,\"c0\":{},\"c1\":{},\"c2\":{},\"c3\":{}}",
+                write(root, new ResourceSerializer(-1, 4), Collections.emptyMap()));
+    }
+
+    @Test
+    void testChildPagination() throws Exception {
+        TestResource root = createFolder(5);
+        Map<String, String> options = new HashMap<>();
+        options.put(ResourceSerializer.CHILD_LIMIT, "2");
+        options.put(ResourceSerializer.CHILD_OFFSET, "2");
+        assertEquals(
+                "{\"level\":0,\"c2\":{},\"c3\":{},\":nextChildOffset\":4}",
+                write(root, new ResourceSerializer(-1), options));
+        options.put(ResourceSerializer.CHILD_OFFSET, "4");
+        assertEquals("{\"level\":0,\"c4\":{}}", write(root, new ResourceSerializer(-1), options));
+        options.put(ResourceSerializer.CHILD_OFFSET, "6");
+        assertEquals("{\"level\":0}", write(root, new ResourceSerializer(-1), options));
+        // invalid options are ignored
+        options.put(ResourceSerializer.CHILD_OFFSET, "invalid");
+        options.put(ResourceSerializer.CHILD_LIMIT, "-5");
+        assertEquals(
+                "{\"level\":0,\"c0\":{},\"c1\":{},\"c2\":{},\"c3\":{},\"c4\":{}}",
+                write(root, new ResourceSerializer(-1), options));
+    }
+
+    @Test
+    void testChildPaginationOfDescendants() throws Exception {
+        TestResource root = new TestResource("/content/test", Collections.singletonMap("level", 0));
+        for (int i = 0; i < 3; i++) {
+            TestResource child = root.addChild(new TestResource("/content/test/c" + i, Collections.emptyMap()));
+            for (int j = 0; j < 3; j++) {
+                child.addChild(new TestResource("/content/test/c" + i + "/g" + j, Collections.emptyMap()));
+            }
+        }
+        // the offset only applies to the children of the exported resource, the limit to all resources
+        Map<String, String> options = new HashMap<>();
+        options.put(ResourceSerializer.CHILD_LIMIT, "1");
+        options.put(ResourceSerializer.CHILD_OFFSET, "1");
+        assertEquals(
+                "{\"level\":0,\"c1\":{\"g0\":{},\":nextChildOffset\":1},\":nextChildOffset\":2}",
+                write(root, new ResourceSerializer(-1), options));
+    }
+
+    @Test
+    void testPropertyFilters() throws Exception {
+        properties.put("jcr:primaryType", "nt:unstructured");
+        properties.put("jcr:created", "2024-01-01");
+        properties.put("rep:policy", "secret");
+        properties.put("title", "Title");
+        TestResource root = new TestResource("/content/test", properties);
+        root.addChild(new TestResource("/content/test/child", properties));
+        ResourceSerializer serializer = new ResourceSerializer(
+                -1, -1, PropertyFilter.create(null, new String[] {"rep:*", "jcr:created"}, null));
+        assertEquals(
+                "{\"jcr:primaryType\":\"nt:unstructured\",\"title\":\"Title\","
+                        + "\"child\":{\"jcr:primaryType\":\"nt:unstructured\",\"title\":\"Title\"}}",
+                write(root, serializer, Collections.emptyMap()));
+        // the options may only narrow the configured filter
+        Map<String, String> options = new HashMap<>();
+        options.put(ResourceSerializer.INCLUDE_PROPERTIES, "rep:*,jcr:*");
+        options.put(ResourceSerializer.EXCLUDE_PROPERTIES, "*:primaryType");
+        assertEquals("{\"child\":{}}", write(root, serializer, options));
+        options.remove(ResourceSerializer.EXCLUDE_PROPERTIES);
+        assertEquals(
+                "{\"jcr:primaryType\":\"nt:unstructured\",\"child\":{\"jcr:primaryType\":\"nt:unstructured\"}}",
+                write(root, serializer, options));
+    }
+
+    private static Map<String, String> recursionLevels(String value) {
+        return Collections.singletonMap(ResourceSerializer.MAX_RECURSION_LEVELS, value);
+    }
+
+    private static TestResource createFolder(int children) {
+        TestResource root = new TestResource("/content/test", Collections.singletonMap("level", 0));
+        for (int i = 0; i < children; i++) {
+            root.addChild(new TestResource("/content/test/c" + i, Collections.emptyMap()));
+        }
+        return root;
+    }
+
+    private static String write(Resource resource, ResourceSerializer serializer, Map<String, String> options)
+            throws Exception {
+        ObjectMapper exportMapper = new ObjectMapper();
+        exportMapper.registerModule(new SimpleModule().addSerializer(Resource.class, serializer));
+        return exportMapper
+                .writer()
+                .withAttribute(JacksonExporter.EXPORT_OPTIONS_ATTRIBUTE, options)
+                .writeValueAsString(resource);
+    }
+
+    private static String write(Resource resource, int maxRecursionLevels) throws Exception {
+        ObjectMapper limitedMapper = new ObjectMapper();
+        limitedMapper.registerModule(
+                new SimpleModule().addSerializer(Resource.class, new ResourceSerializer(maxRecursionLevels)));
+        return limitedMapper.writeValueAsString(resource);
+    }
+
+    private static class TestResource extends SyntheticResource {
+
+        private final ValueMap valueMap;
+
+        private final List<Resource> children = new ArrayList<>();
+
+        TestResource(String path, Map<String, Object> properties) {
+            super(null, path, "test");
+            this.valueMap = new ValueMapDecorator(properties);
+        }
+
+        TestResource addChild(TestResource child) {
+            children.add(child);
+            return child;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+            if (type == ValueMap.class) {
+                return (AdapterType) valueMap;
+            }
+            return super.adaptTo(type);
+        }
+
+        @Override
+        public Iterator<Resource> listChildren() {
+            return children.iterator();
+        }
+
+        @Override
+        public Iterable<Resource> getChildren() {
+            return children;
+        }
+    }
+}